@@ -0,0 +1,81 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * Accumulator holds the running state of the aggregate of one group: the
+ * count, the sum, the minimum and the maximum of the values merged into it so
+ * far. It takes the same space however many values it has seen, and its sum
+ * is a long, so that SUM and AVG over large groups do not overflow while
+ * accumulating.
+ */
+public class Accumulator implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int count = 0;
+    private long sum = 0;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+
+    /** Merge an int value into the group. */
+    public void add(int value) {
+        count++;
+        sum += value;
+        if (value < min)
+            min = value;
+        if (value > max)
+            max = value;
+    }
+
+    /** Count a value that is not summed, such as a string. */
+    public void addCount() {
+        count++;
+    }
+
+    /**
+     * Merge the values of another accumulator of the same group into this
+     * one, as if they had been added here; used to combine the partial
+     * aggregates of a group computed on different threads.
+     */
+    public void merge(Accumulator other) {
+        count += other.count;
+        sum += other.sum;
+        if (other.min < min)
+            min = other.min;
+        if (other.max > max)
+            max = other.max;
+    }
+
+    /** @return the number of values merged into the group */
+    public int getCount() {
+        return count;
+    }
+
+    /** @return the sum of the values merged into the group */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the value of the aggregate op over the group, or null if op is
+     *         not one of MIN, MAX, SUM, AVG and COUNT. The average of an
+     *         empty group is 0; SUM is truncated to an int.
+     */
+    public Field result(Aggregator.Op op) {
+        switch (op) {
+        case MIN:
+            return new IntField(min);
+        case MAX:
+            return new IntField(max);
+        case SUM:
+            return new IntField((int) sum);
+        case AVG:
+            return new IntField(count == 0 ? 0 : (int) (sum / count));
+        case COUNT:
+            return new IntField(count);
+        default:
+            return null;
+        }
+    }
+}
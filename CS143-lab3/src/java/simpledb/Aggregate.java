@@ -1,16 +1,41 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
  * min). Note that we only support aggregates over a single column, grouped by a
  * single column.
+ * <p>
+ * The groups are kept in memory up to a memory budget. Once the budget is
+ * full, tuples of groups already in memory are still merged into them, but
+ * tuples of new groups are written to one of {@link #FANOUT}
+ * {@link SpillFile}s by the hash of their group value. After the groups in
+ * memory have been returned, each spill file is aggregated in turn by a
+ * nested Aggregate, which partitions it again if its groups still do not fit.
+ * <p>
+ * The child is read by batches, through {@link BatchAdapter#of}. A batch
+ * that cannot fill the memory budget with new groups is merged whole by
+ * {@link Aggregator#mergeBatchIntoGroups}; otherwise its tuples are merged
+ * or spilled one at a time.
  */
-public class Aggregate extends Operator {
+public class Aggregate extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
 
+    /** Default memory budget for the groups, in bytes. */
+    public static final int DEFAULT_MEMORY_BUDGET = 256 * BufferPool.PAGE_SIZE;
+
+    /** Number of partitions the tuples of new groups are spilled to. */
+    public static final int FANOUT = 16;
+
+    /** Estimated size of a group besides its group value, in bytes. */
+    static final int GROUP_OVERHEAD = 96;
+
+    /** Partitioning depth after which groups are no longer spilled. */
+    static final int MAX_LEVEL = 3;
+
     /**
      * Constructor.
      * 
@@ -35,18 +60,67 @@ public class Aggregate extends Operator {
     private int groupField;
     private Aggregator.Op operator;
     
+    private final int memoryBudget;
+    // how many times the input has been partitioned before this aggregate
+    private final int level;
+    
     private Aggregator agg;
     private DbIterator aggIterator;
+    // the spill files of the groups that did not fit, or null
+    private transient SpillFile[] partitions;
+    // the aggregate of the partition being returned
+    private transient Aggregate partitionAgg;
+    // index of the partition being returned, -1 while returning agg's groups
+    private transient int current;
+    private transient TupleBatch batch;
     
     public Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop) {
+    	this(child, afield, gfield, aop, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructor with a memory budget for the groups.
+     *
+     * @param memoryBudget
+     *            Bytes of groups to hold in memory; at least one group is
+     *            held however small this is
+     * @see #Aggregate(DbIterator, int, int, Aggregator.Op)
+     */
+    public Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop,
+            int memoryBudget) {
+    	this(child, afield, gfield, aop, memoryBudget, 0);
+    }
+
+    private Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop,
+            int memoryBudget, int level) {
     	this.child = child;
     	aggField = afield;
     	groupField = gfield;
     	operator = aop;
+    	this.memoryBudget = memoryBudget;
+    	this.level = level;
     	agg = null;
     	aggIterator = null;
     }
 
+    /**
+     * @return the number of groups held in memory at once
+     */
+    public int getGroupCapacity() {
+    	if(groupField == Aggregator.NO_GROUPING)
+    		return 1;
+    	int groupSize = child.getTupleDesc().getFieldType(groupField).getLen() + GROUP_OVERHEAD;
+    	return Math.max(1, memoryBudget / groupSize);
+    }
+
+    /**
+     * @return the number of partitions spilled to disk by the last open, or
+     *         0 if every group fit in memory
+     */
+    public int getSpilledPartitionCount() {
+    	return partitions == null ? 0 : partitions.length;
+    }
+
     /**
      * @return If this aggregate is accompanied by a groupby, return the groupby
      *         field index in the <b>INPUT</b> tuples. If not, return
@@ -100,30 +174,98 @@ public class Aggregate extends Operator {
 	    TransactionAbortedException {
 		super.open();
 		child.open();
-		
+		start();
+    }
+
+    /**
+     * Called by open once the child is open: computes the groups, so that
+     * fetchNext only has to return them.
+     */
+    void start() throws DbException, TransactionAbortedException {
+		partitions = null;
+		current = -1;
+		agg = aggregate();
+		aggIterator = agg.iterator();
+		aggIterator.open();
+    }
+
+    /**
+     * @return a new, empty aggregator for the aggregate of this operator
+     */
+    Aggregator newAggregator() {
 		if(child.getTupleDesc().getFieldType(aggField) == Type.INT_TYPE){
 			if(groupField == Aggregator.NO_GROUPING){
-				agg = new IntegerAggregator(Aggregator.NO_GROUPING, null, aggField, operator);
+				return new IntegerAggregator(Aggregator.NO_GROUPING, null, aggField, operator);
 			}
 			else{
-				agg = new IntegerAggregator(groupField, child.getTupleDesc().getFieldType(groupField), aggField, operator);
+				return new IntegerAggregator(groupField, child.getTupleDesc().getFieldType(groupField), aggField, operator);
 			}
 		}
 		else{
 			if(groupField == Aggregator.NO_GROUPING){
-				agg = new StringAggregator(Aggregator.NO_GROUPING, null, aggField, operator);
+				return new StringAggregator(Aggregator.NO_GROUPING, null, aggField, operator);
 			}
 			else{
-				agg = new StringAggregator(groupField, child.getTupleDesc().getFieldType(groupField), aggField, operator);
+				return new StringAggregator(groupField, child.getTupleDesc().getFieldType(groupField), aggField, operator);
+			}
+		}
+    }
+
+    /**
+     * Merge the tuples of the open child into a new aggregator, spilling the
+     * tuples of the groups that do not fit in memory to partitions.
+     *
+     * @return the aggregator holding the groups kept in memory
+     */
+    Aggregator aggregate() throws DbException, TransactionAbortedException {
+		Aggregator groups = newAggregator();
+		int capacity = getGroupCapacity();
+		BatchIterator in = BatchAdapter.of(child);
+		TupleBatch tuples;
+		while((tuples = in.nextBatch()) != null){
+			if(partitions == null && (groupField == Aggregator.NO_GROUPING || level >= MAX_LEVEL
+					|| groups.getGroupCount() + tuples.size() < capacity)){
+				// even if every tuple starts a group, the groups still fit
+				groups.mergeBatchIntoGroups(tuples);
+				continue;
 			}
+			for(int i = 0; i < tuples.size(); i++)
+				merge(groups, tuples.getTuple(i), capacity);
 		}
-		
-		while(child.hasNext()){
-			agg.mergeTupleIntoGroup(child.next());
+		return groups;
+    }
+
+    /**
+     * Merge t into groups, or spill it if its group is not in memory and
+     * there is no room for it.
+     */
+    private void merge(Aggregator groups, Tuple t, int capacity) throws DbException {
+		if(partitions != null){
+			Field key = t.getField(groupField);
+			if(!groups.hasGroup(key)){
+				spill(partitions[SpillFile.partitionOf(key, level, FANOUT)], t);
+				return;
+			}
 		}
-		
-		aggIterator = agg.iterator();
-		aggIterator.open();
+		groups.mergeTupleIntoGroup(t);
+		if(partitions == null && groupField != Aggregator.NO_GROUPING
+				&& groups.getGroupCount() >= capacity && level < MAX_LEVEL){
+			partitions = new SpillFile[FANOUT];
+			try {
+				for(int i = 0; i < FANOUT; i++)
+					partitions[i] = new SpillFile(child.getTupleDesc());
+			} catch (IOException e) {
+				throw new DbException("could not create partition: " + e.getMessage());
+			}
+		}
+    }
+
+    private static void spill(SpillFile file, Tuple t) throws DbException {
+    	try {
+    		file.add(t);
+    	} catch (IOException e) {
+    		throw new DbException("could not write partition: " + e.getMessage());
+    	}
     }
 
     /**
@@ -134,17 +276,60 @@ public class Aggregate extends Operator {
      * aggregate. Should return null if there are no more tuples.
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-		if(aggIterator.hasNext()){
-			return aggIterator.next();
+		if(current < 0){
+			if(aggIterator.hasNext()){
+				return aggIterator.next();
+			}
+			if(partitions == null){
+				return null;
+			}
+			current = 0;
 		}
-		else{
-			return null;
+		// then the groups of each spilled partition
+		while(current < FANOUT){
+			if(partitionAgg == null){
+				if(partitions[current].size() == 0){
+					current++;
+					continue;
+				}
+				partitionAgg = new Aggregate(partitions[current], aggField, groupField,
+						operator, memoryBudget, level + 1);
+				partitionAgg.open();
+			}
+			if(partitionAgg.hasNext()){
+				return partitionAgg.next();
+			}
+			partitionAgg.close();
+			partitionAgg = null;
+			current++;
 		}
+		return null;
+    }
+
+    /**
+     * Returns the groups in batches, filled from {@link #fetchNext}. The
+     * batches take the schema of the result tuples.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+		Tuple t = fetchNext();
+		if(t == null)
+			return null;
+		if(batch == null)
+			batch = new TupleBatch(t.getTupleDesc());
+		batch.clear();
+		do {
+			batch.addTuple(t);
+		} while(!batch.isFull() && (t = fetchNext()) != null);
+		return batch;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
     	aggIterator.rewind();
-		child.rewind();
+    	if(partitionAgg != null){
+    		partitionAgg.close();
+    		partitionAgg = null;
+    	}
+    	current = -1;
     }
 
     /**
@@ -165,7 +350,18 @@ public class Aggregate extends Operator {
     public void close() {
     	super.close();
 		child.close();
-		aggIterator.close();
+		if(aggIterator != null){
+			aggIterator.close();
+		}
+		if(partitionAgg != null){
+			partitionAgg.close();
+			partitionAgg = null;
+		}
+		if(partitions != null){
+			for(SpillFile f : partitions)
+				f.delete();
+			partitions = null;
+		}
     }
 
     @Override
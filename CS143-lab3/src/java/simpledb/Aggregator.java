@@ -76,6 +76,35 @@ public interface Aggregator extends Serializable {
      */
     public void mergeTupleIntoGroup(Tuple tup);
 
+    /**
+     * Merge the tuples of a batch into the aggregate, as if each were merged
+     * by {@link #mergeTupleIntoGroup}.
+     *
+     * @param batch the tuples to merge
+     */
+    public void mergeBatchIntoGroups(TupleBatch batch);
+
+    /**
+     * @return the number of distinct groups merged so far
+     */
+    public int getGroupCount();
+
+    /**
+     * @param groupValue a value of the group-by field; ignored if there is
+     *        no grouping
+     * @return true if a tuple of the group has been merged
+     */
+    public boolean hasGroup(Field groupValue);
+
+    /**
+     * Merge the groups of another aggregator into this one, as if the tuples
+     * merged into it had been merged here. Both must have been constructed
+     * with the same arguments.
+     *
+     * @param other the aggregator to merge; it is left unchanged
+     */
+    public void merge(Aggregator other);
+
     /**
      * Create a DbIterator over group aggregate results.
      * @see simpledb.TupleIterator for a possible helper
@@ -0,0 +1,26 @@
+package simpledb;
+
+/**
+ * BatchIterator is a DbIterator that can also return its tuples a
+ * {@link TupleBatch} at a time, which costs one call per batch rather than
+ * one or two per tuple and lets operators work on whole columns of ints.
+ * After an open or a rewind the tuples are read either with
+ * {@link #nextBatch} or with hasNext and next, not a mix of the two.
+ * <p>
+ * Operators that read their children by batches use
+ * {@link BatchAdapter#of} to read any child this way, and
+ * {@link TupleAdapter} returns the tuples of a BatchIterator one at a time.
+ */
+public interface BatchIterator extends DbIterator {
+
+    /**
+     * Returns the next batch of tuples. The batch belongs to this iterator
+     * and is only valid until the next call; the caller may narrow its
+     * selection but must not otherwise change it.
+     *
+     * @return a batch of at least one tuple, or null if there are no more
+     *         tuples
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+}
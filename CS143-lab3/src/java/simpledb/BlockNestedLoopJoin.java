@@ -0,0 +1,149 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * BlockNestedLoopJoin evaluates a join by reading as many tuples of the outer
+ * (left) child as fit in a memory budget, and then scanning the inner (right)
+ * child once for the whole block, rather than once per outer tuple as
+ * {@link Join} does. The inner child is therefore rewound only once per block
+ * of outer tuples.
+ * <p>
+ * It works with any join predicate, and is what the optimizer uses for joins
+ * that are not equalities.
+ */
+public class BlockNestedLoopJoin extends Join {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Default memory budget for the outer block, in bytes. */
+    public static final int DEFAULT_MEMORY_BUDGET = 64 * BufferPool.PAGE_SIZE;
+
+    private final int memoryBudget;
+
+    private transient TupleDesc td;
+    private transient DbIterator outer;
+    private transient DbIterator inner;
+    private transient Tuple[] block;
+    private transient int blockSize;
+    // next position in block to compare with innerTup
+    private transient int blockPos;
+    private transient Tuple innerTup;
+
+    /**
+     * Constructor. Uses the {@link #DEFAULT_MEMORY_BUDGET}.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @param memoryBudget
+     *            Bytes of outer tuples to buffer per scan of child2; at least
+     *            one tuple is buffered however small this is
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, DbIterator child1,
+            DbIterator child2, int memoryBudget) {
+        super(p, child1, child2);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /** @return the number of outer tuples buffered per scan of the inner child */
+    public int getBlockTuples() {
+        int tupleSize = getChildren()[0].getTupleDesc().getSize();
+        return Math.max(1, memoryBudget / tupleSize);
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        super.open();
+        DbIterator[] children = getChildren();
+        outer = children[0];
+        inner = children[1];
+        td = getTupleDesc();
+        block = new Tuple[getBlockTuples()];
+        loadBlock();
+    }
+
+    public void close() {
+        super.close();
+        block = null;
+        innerTup = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        outer.rewind();
+        inner.rewind();
+        loadBlock();
+    }
+
+    /**
+     * Fill the block with the next outer tuples.
+     *
+     * @return false if the outer child is exhausted
+     */
+    private boolean loadBlock() throws DbException, TransactionAbortedException {
+        Arrays.fill(block, 0, blockSize, null);
+        blockSize = 0;
+        while (blockSize < block.length && outer.hasNext())
+            block[blockSize++] = outer.next();
+        innerTup = null;
+        blockPos = 0;
+        return blockSize > 0;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. Each inner tuple is compared with every tuple of the
+     * current block before the next inner tuple is read, so results come out
+     * grouped by inner tuple within each block.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        JoinPredicate p = getJoinPredicate();
+        while (blockSize > 0) {
+            if (innerTup != null) {
+                while (blockPos < blockSize) {
+                    Tuple outerTup = block[blockPos++];
+                    if (p.filter(outerTup, innerTup))
+                        return merge(outerTup, innerTup);
+                }
+                innerTup = null;
+            }
+            if (inner.hasNext()) {
+                innerTup = inner.next();
+                blockPos = 0;
+            } else if (loadBlock()) {
+                inner.rewind();
+            }
+        }
+        return null;
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+        Tuple combined = new Tuple(td);
+        int n1 = t1.getTupleDesc().numFields();
+        for (int i = 0; i < n1; i++)
+            combined.setField(i, t1.getField(i));
+        for (int j = 0; j < t2.getTupleDesc().numFields(); j++)
+            combined.setField(n1 + j, t2.getField(j));
+        return combined;
+    }
+}
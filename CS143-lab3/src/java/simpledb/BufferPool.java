@@ -3,6 +3,7 @@ package simpledb;
 import java.io.*;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.ArrayList;
 import java.util.Set;
 
@@ -28,16 +29,98 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    private ConcurrentHashMap<PageId, Page> pool;
+    private int maxPages;
+    private final EvictionPolicy policy;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetches = new AtomicLong();
+    private final AtomicLong prefetchesUsed = new AtomicLong();
+    private final AtomicLong prefetchesWasted = new AtomicLong();
+    // pages read by prefetchPage that no getPage call has asked for yet
+    private final ConcurrentHashMap<PageId, Boolean> prefetched =
+        new ConcurrentHashMap<PageId, Boolean>();
+    // counts pages written back or discarded; guarded by this
+    private long pageWrites = 0;
+
+    private final LockManager lockManager = new LockManager();
+
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * NO STEAL: pages dirtied by a running transaction stay in the pool until
+     * it commits or aborts.
+     */
+    private final EvictionPolicy.Filter cleanPage = new EvictionPolicy.Filter() {
+        public boolean canEvict(PageId pid) {
+            Page page = pool.get(pid);
+            return page == null || page.isDirty() == null;
+        }
+    };
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, using CLOCK
+     * eviction.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
-    private ConcurrentHashMap<PageId, Page> pool;
-    private int maxPages;
     public BufferPool(int numPages) {
+        this(numPages, new ClockEvictionPolicy());
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and asks the
+     * given policy which page to drop when it is full.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the eviction policy; must not be shared with another pool
+     */
+    public BufferPool(int numPages, EvictionPolicy policy) {
         pool = new ConcurrentHashMap<PageId, Page>();
         maxPages = numPages;
+        this.policy = policy;
+    }
+
+    /** @return the maximum number of pages this buffer pool caches */
+    public int getNumPages() {
+        return maxPages;
+    }
+
+    /** @return the eviction policy of this buffer pool */
+    public EvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+
+    /** @return the number of getPage calls answered from the pool */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** @return the number of getPage calls that had to read from disk */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** @return the number of pages read into the pool by prefetchPage */
+    public long getPrefetchCount() {
+        return prefetches.get();
+    }
+
+    /** @return the number of prefetched pages later requested by getPage */
+    public long getPrefetchUsedCount() {
+        return prefetchesUsed.get();
+    }
+
+    /** @return the number of prefetched pages evicted before any getPage */
+    public long getPrefetchWastedCount() {
+        return prefetchesWasted.get();
+    }
+
+    /** Reset the hit, miss and prefetch counters, e.g. between benchmark runs. */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        prefetches.set(0);
+        prefetchesUsed.set(0);
+        prefetchesWasted.set(0);
     }
     
     public static int getPageSize() {
@@ -49,10 +132,16 @@ public class BufferPool {
     	BufferPool.pageSize = pageSize;
     }
 
+    /** @return the lock manager that guards the pages of this pool */
+    public LockManager getLockManager() {
+        return lockManager;
+    }
+
     /**
      * Retrieve the specified page with the associated permissions.
      * Will acquire a lock and may block if that lock is held by another
-     * transaction.
+     * transaction. READ_WRITE requests take an exclusive lock, anything else
+     * (including a null perm) a shared one; a null tid reads without locking.
      * <p>
      * The retrieved page should be looked up in the buffer pool.  If it
      * is present, it should be returned.  If it is not present, it should
@@ -64,26 +153,145 @@ public class BufferPool {
      * @param pid the ID of the requested page
      * @param perm the requested permissions on the page
      */
-    private PageId mostRecentPage = null;
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
-        if(pool.containsKey(pid)){
-        	mostRecentPage = pid;
-        	return pool.get(pid);
+        return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieve the specified page on behalf of a scan that reads through a
+     * private {@link BufferRing}. Hits behave exactly like
+     * {@link #getPage(TransactionId, PageId, Permissions)}; on a miss the page
+     * takes over the ring's oldest frame instead of evicting a page chosen
+     * by the eviction policy.
+     *
+     * @param tid the ID of the transaction requesting the page
+     * @param pid the ID of the requested page
+     * @param perm the requested permissions on the page
+     * @param ring the scan's ring, or null to use the shared pool
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm,
+            BufferRing ring) throws TransactionAbortedException, DbException {
+        if (tid != null)
+            lockManager.acquire(tid, pid, perm == Permissions.READ_WRITE);
+        Page page = pool.get(pid);
+        if (page != null) {
+            recordHit(pid);
+            return page;
+        }
+        return loadPage(pid, ring);
+    }
+
+    /**
+     * Read the specified page into the pool ahead of a getPage call that is
+     * expected soon, unless it is already resident. Prefetching acquires no
+     * locks and does not count as a hit or miss; it is meant to be called from
+     * a background thread such as the one used by {@link ReadAhead}. The page
+     * is read from disk outside the pool's monitor and only added to the pool
+     * under it; a page that may have gone stale in between is dropped.
+     *
+     * @param pid the ID of the page to read
+     * @param ring the ring of the scan the page is read for, or null
+     * @throws DbException if no page can be evicted to make room
+     */
+    public void prefetchPage(PageId pid, BufferRing ring) throws DbException {
+        long writes;
+        synchronized (this) {
+            if (pool.containsKey(pid))
+                return;
+            writes = pageWrites;
+        }
+        // read without holding the pool, so that misses and flushes of other
+        // threads do not wait for the disk on the prefetcher's behalf
+        Page page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+        if (page == null)
+            return;
+        synchronized (this) {
+            // drop the page if another thread loaded it meanwhile, or if a
+            // page was written back since, which may have made it stale
+            if (pool.containsKey(pid) || pageWrites != writes)
+                return;
+            prefetches.incrementAndGet();
+            // marked before the page becomes visible to lock-free hits
+            prefetched.put(pid, Boolean.TRUE);
+            boolean loaded = false;
+            try {
+                addToPool(page, ring);
+                loaded = true;
+            } finally {
+                if (!loaded)
+                    prefetched.remove(pid);
+            }
         }
-        else if(pool.size() == maxPages){
-        	evictPage();
-        	Page newPage = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-        	pool.put(pid, newPage);
-        	mostRecentPage = pid;
-        	return newPage;
+    }
+
+    private void recordHit(PageId pid) {
+        hits.incrementAndGet();
+        policy.pageAccessed(pid);
+        if (!prefetched.isEmpty() && prefetched.remove(pid) != null)
+            prefetchesUsed.incrementAndGet();
+    }
+
+    /**
+     * Read a page that missed in the pool, evicting another page first if
+     * the pool is full. Misses are serialized so that two threads never load
+     * the same page twice.
+     */
+    private synchronized Page loadPage(PageId pid, BufferRing ring)
+            throws DbException {
+        Page page = pool.get(pid);
+        if (page != null) {
+            recordHit(pid);
+            return page;
         }
-        else{
-        	Page newPage = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-        	pool.put(pid, newPage);
-        	mostRecentPage = pid;
-        	return newPage;
+        misses.incrementAndGet();
+        return readIntoPool(pid, ring);
+    }
+
+    /**
+     * Read a page that is not resident from its file and add it to the pool.
+     */
+    private synchronized Page readIntoPool(PageId pid, BufferRing ring)
+            throws DbException {
+        Page page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+        addToPool(page, ring);
+        return page;
+    }
+
+    /**
+     * Add a page that is not resident to the pool, taking a frame from the
+     * ring or evicting a page first if necessary.
+     */
+    private synchronized void addToPool(Page page, BufferRing ring)
+            throws DbException {
+        PageId pid = page.getId();
+        PageId recycled = ring == null ? null : ring.replace(pid);
+        if (recycled != null && pool.containsKey(recycled)
+                && cleanPage.canEvict(recycled)) {
+            removePage(recycled);
+        } else if (pool.size() >= maxPages) {
+            evictPage();
         }
+        pool.put(pid, page);
+        policy.pageAdded(pid);
+    }
+
+    /**
+     * Install a page modified by an insert or delete, making room for it if
+     * it is not resident yet.
+     */
+    private synchronized void cachePage(Page page) throws DbException {
+        PageId pid = page.getId();
+        if (pool.containsKey(pid)) {
+            pool.put(pid, page);
+            policy.pageAccessed(pid);
+            return;
+        }
+        if (pool.size() >= maxPages) {
+            evictPage();
+        }
+        pool.put(pid, page);
+        policy.pageAdded(pid);
     }
 
     /**
@@ -96,8 +304,7 @@ public class BufferPool {
      * @param pid the ID of the page to unlock
      */
     public  void releasePage(TransactionId tid, PageId pid) {
-        // some code goes here
-        // not necessary for lab1|lab2
+        lockManager.release(tid, pid);
     }
 
     /**
@@ -106,15 +313,12 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the unlock
      */
     public void transactionComplete(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
-        // some code goes here
-        // not necessary for lab1|lab2
-        return false;
+        return lockManager.holdsLock(tid, p);
     }
 
     /**
@@ -126,8 +330,16 @@ public class BufferPool {
      */
     public void transactionComplete(TransactionId tid, boolean commit)
         throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        try {
+            if (commit) {
+                // FORCE: a committed transaction's pages are on disk
+                flushPages(tid);
+            } else {
+                discardPages(tid);
+            }
+        } finally {
+            lockManager.releaseAll(tid);
+        }
     }
 
     /**
@@ -150,7 +362,7 @@ public class BufferPool {
     	ArrayList<Page> changedPages = pageFile.insertTuple(tid, t);
     	for(Page pages : changedPages){
     		pages.markDirty(true, tid);
-    		pool.put(pages.getId(), pages);
+    		cachePage(pages);
     	}
     }
 
@@ -172,7 +384,7 @@ public class BufferPool {
     	ArrayList<Page> changedPages = pageFile.deleteTuple(tid, t);
     	for(Page pages : changedPages){
     		pages.markDirty(true, tid);
-    		pool.put(pages.getId(), pages);
+    		cachePage(pages);
     	}
     }
 
@@ -187,6 +399,7 @@ public class BufferPool {
         	if(pool.get(id).isDirty() != null){
         		DbFile file = Database.getCatalog().getDatabaseFile(id.getTableId());
         		file.writePage(pool.get(id));
+        		pageWrites++;
         		pool.get(id).markDirty(false, new TransactionId());
         	}
         }
@@ -199,8 +412,11 @@ public class BufferPool {
         cache.
     */
     public synchronized void discardPage(PageId pid) {
-        // some code goes here
-        // only necessary for lab5
+        pageWrites++;
+        prefetched.remove(pid);
+        if (pool.remove(pid) != null) {
+            policy.pageRemoved(pid);
+        }
     }
 
     /**
@@ -208,31 +424,79 @@ public class BufferPool {
      * @param pid an ID indicating the page to flush
      */
     private synchronized  void flushPage(PageId pid) throws IOException {
+        Page page = pool.get(pid);
+        if (page == null || page.isDirty() == null) {
+            return;
+        }
     	DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
-		file.writePage(pool.get(pid));
-		pool.get(pid).markDirty(false, new TransactionId());
+		file.writePage(page);
+		pageWrites++;
+		page.markDirty(false, null);
     }
 
     /** Write all pages of the specified transaction to disk.
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        for (PageId pid : lockManager.pagesLockedBy(tid)) {
+            Page page = pool.get(pid);
+            if (page != null && tid.equals(dirtier(page))) {
+                flushPage(pid);
+                page.setBeforeImage();
+            }
+        }
+    }
+
+    /** @return the transaction that dirtied page, or a fresh id if it is clean */
+    private static TransactionId dirtier(Page page) {
+        TransactionId t = page.isDirty();
+        // TransactionId.equals cannot take null
+        return t == null ? NOBODY : t;
+    }
+
+    private static final TransactionId NOBODY = new TransactionId();
+
+    /**
+     * Drop the pages tid has dirtied, so that they are read back from disk
+     * as they were before tid changed them.
+     */
+    private synchronized void discardPages(TransactionId tid) {
+        for (PageId pid : lockManager.pagesLockedBy(tid)) {
+            Page page = pool.get(pid);
+            if (page != null && tid.equals(dirtier(page))) {
+                discardPage(pid);
+            }
+        }
     }
 
     /**
      * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * The page is chosen by the pool's {@link EvictionPolicy} among the clean
+     * pages only, since dirty pages may not reach disk before their
+     * transaction commits.
+     * @throws DbException if every page in the pool is dirty
      */
     private synchronized  void evictPage() throws DbException {
+        PageId victim = policy.chooseVictim(cleanPage);
+        if (victim == null) {
+            throw new DbException("No page can be evicted from the buffer pool");
+        }
+        removePage(victim);
+    }
+
+    /**
+     * Flush a resident page if it is dirty and drop it from the pool.
+     */
+    private synchronized void removePage(PageId pid) throws DbException {
     	try{
-    		flushPage(mostRecentPage);
-    		pool.remove(mostRecentPage);
+    		flushPage(pid);
     	}
     	catch(IOException e){
     		throw new DbException("Failed to flush page on eviction");
     	}
-        
+        pool.remove(pid);
+        policy.pageRemoved(pid);
+        if (prefetched.remove(pid) != null)
+            prefetchesWasted.incrementAndGet();
     }
 
 }
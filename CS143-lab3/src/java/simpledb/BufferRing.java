@@ -0,0 +1,68 @@
+package simpledb;
+
+/**
+ * A BufferRing is a small, private set of buffer pool frames used by a
+ * single large sequential scan (compare the bulk-read strategy of
+ * PostgreSQL). Once the ring is full, every page the scan misses on replaces
+ * the page the scan read ring.length misses ago, instead of asking the
+ * pool's {@link EvictionPolicy} for a victim. A scan over a table much larger
+ * than the pool therefore streams through a handful of frames and leaves the
+ * rest of the cache alone.
+ *
+ * @see BufferPool#getPage(TransactionId, PageId, Permissions, BufferRing)
+ */
+public class BufferRing {
+
+    /**
+     * Scans use a ring once the table has more pages than this fraction of
+     * the buffer pool.
+     */
+    public static final double SCAN_THRESHOLD = 0.75;
+
+    /** Upper bound on the number of frames in a scan ring. */
+    public static final int MAX_RING_PAGES = 32;
+
+    private final PageId[] frames;
+    private int next = 0;
+
+    /**
+     * @param size the number of frames in the ring
+     */
+    public BufferRing(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("ring must have at least one frame");
+        frames = new PageId[size];
+    }
+
+    /**
+     * Return a ring for a sequential scan over a table of numPages pages, or
+     * null if the table is small enough to be cached normally.
+     *
+     * @param pool the buffer pool the scan reads through
+     * @param numPages the number of pages in the scanned table
+     */
+    public static BufferRing forScan(BufferPool pool, int numPages) {
+        if (numPages <= pool.getNumPages() * SCAN_THRESHOLD)
+            return null;
+        int size = Math.min(MAX_RING_PAGES, pool.getNumPages() / 8);
+        return new BufferRing(Math.max(2, size));
+    }
+
+    /** @return the number of frames in this ring */
+    public int size() {
+        return frames.length;
+    }
+
+    /**
+     * Record that pid was read into the ring's next frame.
+     *
+     * @return the page that previously occupied that frame, which the buffer
+     *         pool should drop to make room, or null while the ring fills up
+     */
+    synchronized PageId replace(PageId pid) {
+        PageId old = frames[next];
+        frames[next] = pid;
+        next = (next + 1) % frames.length;
+        return old;
+    }
+}
@@ -129,14 +129,24 @@ public class Catalog {
     	return idMap.get(id).getName();
     }
     
-    /** Delete all tables from the catalog */
+    /** Delete all tables from the catalog, closing their files */
     public void clear() {
+        for (DbFile file : tableMap.values()) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         tableMap.clear();
         idMap.clear();
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line describes one table as <code>name (field type [pk], ...)</code>,
+     * optionally followed by <code>mapped</code> to read the table through a
+     * {@link MappedHeapFile} instead of a plain {@link HeapFile}.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -146,7 +156,7 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
             
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                //assume line is of the format name (field type, field type, ...) [mapped]
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
@@ -177,7 +187,18 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                File dataFile = new File(baseFolder+"/"+name + ".dat");
+                String storage = line.substring(line.indexOf(")") + 1).trim();
+                HeapFile tabHf;
+                if (storage.length() == 0)
+                    tabHf = new HeapFile(dataFile, t);
+                else if (storage.toLowerCase().equals("mapped"))
+                    tabHf = new MappedHeapFile(dataFile, t);
+                else {
+                    System.out.println("Unknown table annotation " + storage);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
@@ -0,0 +1,79 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CLOCK (second chance) eviction. Resident pages sit in a circular list of
+ * frames, each with a reference bit. A hit only sets the bit, which needs no
+ * lock; when a victim is needed the hand sweeps the frames, clearing set bits
+ * and stopping at the first eligible frame whose bit is already clear.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private static class Frame {
+        final PageId pid;
+        final int index;
+        volatile boolean referenced;
+
+        Frame(PageId pid, int index) {
+            this.pid = pid;
+            this.index = index;
+            this.referenced = true;
+        }
+    }
+
+    private final ConcurrentHashMap<PageId, Frame> frames =
+        new ConcurrentHashMap<PageId, Frame>();
+    // guarded by this
+    private final ArrayList<Frame> clock = new ArrayList<Frame>();
+    private final ArrayList<Integer> freeSlots = new ArrayList<Integer>();
+    private int hand = 0;
+
+    public synchronized void pageAdded(PageId pid) {
+        if (frames.containsKey(pid))
+            return;
+        int index;
+        if (freeSlots.isEmpty()) {
+            index = clock.size();
+            clock.add(null);
+        } else {
+            index = freeSlots.remove(freeSlots.size() - 1);
+        }
+        Frame f = new Frame(pid, index);
+        clock.set(index, f);
+        frames.put(pid, f);
+    }
+
+    public void pageAccessed(PageId pid) {
+        Frame f = frames.get(pid);
+        if (f != null)
+            f.referenced = true;
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        Frame f = frames.remove(pid);
+        if (f != null) {
+            clock.set(f.index, null);
+            freeSlots.add(f.index);
+        }
+    }
+
+    public synchronized PageId chooseVictim(Filter filter) {
+        int n = clock.size();
+        // two full turns: the first may only clear reference bits
+        for (int step = 0; step < 2 * n; step++) {
+            if (hand >= n)
+                hand = 0;
+            Frame f = clock.get(hand++);
+            if (f == null || !filter.canEvict(f.pid))
+                continue;
+            if (f.referenced) {
+                f.referenced = false;
+                continue;
+            }
+            return f.pid;
+        }
+        return null;
+    }
+}
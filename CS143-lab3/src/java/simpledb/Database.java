@@ -55,11 +55,29 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return installBufferPool(new BufferPool(pages));
+    }
+
+    /**
+     * Method used for testing and benchmarking -- create a new instance of
+     * the buffer pool that evicts pages according to the given policy, and
+     * return it
+     *
+     * @param pages the number of pages in the new buffer pool
+     * @param policy the eviction policy of the new buffer pool, e.g.
+     *     {@link ClockEvictionPolicy}, {@link LruEvictionPolicy} or
+     *     {@link LruKEvictionPolicy}
+     */
+    public static BufferPool resetBufferPool(int pages, EvictionPolicy policy) {
+        return installBufferPool(new BufferPool(pages, policy));
+    }
+
+    private static BufferPool installBufferPool(BufferPool bufferPool) {
         java.lang.reflect.Field bufferPoolF=null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), bufferPool);
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
@@ -75,7 +93,9 @@ public class Database {
 
     // reset the database, used for unit tests only.
     public static void reset() {
-        _instance.set(new Database());
+        Database old = _instance.getAndSet(new Database());
+        // release the file handles held by the old catalog's tables
+        old._catalog.clear();
     }
 
 }
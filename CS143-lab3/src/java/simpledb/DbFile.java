@@ -88,4 +88,13 @@ public interface DbFile {
      * @return TupleDesc of this DbFile.
      */
     public TupleDesc getTupleDesc();
+
+    /**
+     * Releases any operating system resources, such as open file handles,
+     * held by this DbFile. A closed DbFile may be used again; it reacquires
+     * its resources on demand.
+     *
+     * @throws IOException if the underlying file cannot be closed
+     */
+    public void close() throws IOException;
 }
@@ -0,0 +1,56 @@
+package simpledb;
+
+/**
+ * EvictionPolicy decides which resident page the BufferPool drops when it
+ * needs a free frame. The BufferPool reports every page that enters or leaves
+ * the pool, as well as every cache hit, and the policy keeps whatever access
+ * history it needs in order to pick a victim.
+ * <p>
+ * A policy instance belongs to exactly one BufferPool; implementations must
+ * be safe to call from multiple threads.
+ *
+ * @see BufferPool#BufferPool(int, EvictionPolicy)
+ * @see Database#resetBufferPool(int, EvictionPolicy)
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Lets the BufferPool veto candidate victims, for example pages that are
+     * dirty and cannot be written out yet.
+     */
+    public interface Filter {
+        /** @return true if the page may be evicted right now */
+        public boolean canEvict(PageId pid);
+    }
+
+    /**
+     * Called after a page has been read into the buffer pool.
+     *
+     * @param pid the page that now occupies a frame
+     */
+    public void pageAdded(PageId pid);
+
+    /**
+     * Called on every buffer pool hit.
+     *
+     * @param pid the page that was requested
+     */
+    public void pageAccessed(PageId pid);
+
+    /**
+     * Called after a page has left the buffer pool, either because it was
+     * evicted or because it was discarded.
+     *
+     * @param pid the page that no longer occupies a frame
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Pick the page that should be evicted next. The page is not removed from
+     * the policy's bookkeeping until {@link #pageRemoved} is called.
+     *
+     * @param filter decides which resident pages are eligible
+     * @return the page to evict, or null if no resident page is eligible
+     */
+    public PageId chooseVictim(Filter filter);
+}
@@ -0,0 +1,277 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ExternalSort returns the tuples of its child in the order of a comparator,
+ * using at most a fixed memory budget. If the child fits in the budget it is
+ * sorted in memory; otherwise it is cut into budget-sized runs that are each
+ * sorted and written to a {@link SpillFile}, and the runs are merged on the
+ * fly by a {@link LoserTree} while tuples are returned. If there are more
+ * runs than the budget has read buffers for, groups of runs are first merged
+ * into longer runs until few enough are left. The sort is stable.
+ * <p>
+ * The tuples held in memory, whether they are returned or spilled as a run,
+ * are sorted by a {@link ParallelSort} on several threads.
+ */
+public class ExternalSort extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Default memory budget for tuples being sorted, in bytes. */
+    public static final int DEFAULT_MEMORY_BUDGET = 256 * BufferPool.PAGE_SIZE;
+
+    private DbIterator child;
+    private final Comparator<Tuple> comparator;
+    private final int memoryBudget;
+    private final int parallelism;
+
+    // the threads the tuples are sorted on, from open to close; null for a
+    // parallelism of 1
+    private transient ForkJoinPool pool;
+
+    // the sorted tuples when the child fits in memory, null otherwise
+    private transient List<Tuple> sorted;
+    private transient Iterator<Tuple> it;
+    // the sorted runs when the child does not fit in memory
+    private transient ArrayList<SpillFile> runs;
+    private transient LoserTree merge;
+    // the number of runs written by the sort, and of passes merging them
+    private transient int runCount;
+    private transient int mergePasses;
+
+    /**
+     * Creates an ExternalSort with the {@link #DEFAULT_MEMORY_BUDGET}.
+     *
+     * @param comparator
+     *            the order to return tuples in
+     * @param child
+     *            the tuples to sort
+     */
+    public ExternalSort(Comparator<Tuple> comparator, DbIterator child) {
+        this(comparator, child, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Creates an ExternalSort.
+     *
+     * @param comparator
+     *            the order to return tuples in
+     * @param child
+     *            the tuples to sort
+     * @param memoryBudget
+     *            bytes of tuples to hold in memory at once; at least one
+     *            tuple is held however small this is
+     */
+    public ExternalSort(Comparator<Tuple> comparator, DbIterator child,
+            int memoryBudget) {
+        this(comparator, child, memoryBudget, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an ExternalSort that sorts the tuples in memory on a number of
+     * threads.
+     *
+     * @param parallelism
+     *            the number of threads to sort on
+     * @see #ExternalSort(Comparator, DbIterator, int)
+     */
+    public ExternalSort(Comparator<Tuple> comparator, DbIterator child,
+            int memoryBudget, int parallelism) {
+        this.comparator = comparator;
+        this.child = child;
+        this.memoryBudget = memoryBudget;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /** @return the order tuples are returned in */
+    public Comparator<Tuple> getComparator() {
+        return comparator;
+    }
+
+    /** @return the number of threads tuples are sorted on in memory */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the number of runs spilled to disk by the last open, or 0 if
+     *         the child was sorted in memory
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * @return the number of passes of the last open that merged runs into
+     *         longer runs before the final merge
+     */
+    public int getMergePassCount() {
+        return mergePasses;
+    }
+
+    /**
+     * @return the number of runs merged at once, one read buffer of
+     *         {@link SpillFile#BUFFER_SIZE} each within the memory budget
+     */
+    public int getFanIn() {
+        return Math.max(2, memoryBudget / SpillFile.BUFFER_SIZE);
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        if (parallelism > 1 && pool == null)
+            pool = new ForkJoinPool(parallelism);
+        sort();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        deleteRuns();
+        sorted = null;
+        it = null;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (sorted != null)
+            it = sorted.iterator();
+        else
+            startMerge();
+    }
+
+    /**
+     * Read the whole child, sorting it in memory or into runs on disk.
+     */
+    private void sort() throws DbException, TransactionAbortedException {
+        deleteRuns();
+        int capacity = Math.max(1, memoryBudget / getTupleDesc().getSize());
+        ArrayList<Tuple> buffer = new ArrayList<Tuple>();
+        while (child.hasNext()) {
+            buffer.add(child.next());
+            if (buffer.size() == capacity && child.hasNext()) {
+                spill(buffer);
+                buffer.clear();
+            }
+        }
+        if (runs.isEmpty()) {
+            sorted = sortBuffer(buffer);
+            it = sorted.iterator();
+        } else {
+            if (!buffer.isEmpty())
+                spill(buffer);
+            buffer = null;
+            sorted = null;
+            runCount = runs.size();
+            mergeRuns();
+            startMerge();
+        }
+    }
+
+    private List<Tuple> sortBuffer(ArrayList<Tuple> buffer) {
+        Tuple[] tuples = buffer.toArray(new Tuple[buffer.size()]);
+        ParallelSort.sort(tuples, comparator, pool);
+        return Arrays.asList(tuples);
+    }
+
+    private void spill(ArrayList<Tuple> buffer) throws DbException {
+        List<Tuple> tuples = sortBuffer(buffer);
+        try {
+            SpillFile run = new SpillFile(getTupleDesc());
+            runs.add(run);
+            for (Tuple t : tuples)
+                run.add(t);
+        } catch (IOException e) {
+            throw new DbException("could not write sorted run: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Merge groups of consecutive runs into single runs until at most
+     * {@link #getFanIn} are left.
+     */
+    private void mergeRuns() throws DbException, TransactionAbortedException {
+        int fanIn = getFanIn();
+        while (runs.size() > fanIn) {
+            ArrayList<SpillFile> merged = new ArrayList<SpillFile>();
+            for (int i = 0; i < runs.size(); i += fanIn) {
+                List<SpillFile> group = runs.subList(i, Math.min(runs.size(), i + fanIn));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+                LoserTree tree = openMerge(group);
+                try {
+                    SpillFile run = new SpillFile(getTupleDesc());
+                    merged.add(run);
+                    for (Tuple t = tree.next(); t != null; t = tree.next())
+                        run.add(t);
+                } catch (IOException e) {
+                    throw new DbException("could not write merged run: " + e.getMessage());
+                } finally {
+                    for (SpillFile f : group)
+                        f.delete();
+                }
+            }
+            runs = merged;
+            mergePasses++;
+        }
+    }
+
+    private void startMerge() throws DbException, TransactionAbortedException {
+        merge = openMerge(runs);
+    }
+
+    private LoserTree openMerge(List<SpillFile> group)
+            throws DbException, TransactionAbortedException {
+        for (SpillFile run : group)
+            run.open();
+        return new LoserTree(comparator, group.toArray(new DbIterator[group.size()]));
+    }
+
+    private void deleteRuns() {
+        if (runs != null) {
+            for (SpillFile run : runs)
+                run.delete();
+        }
+        runs = new ArrayList<SpillFile>();
+        merge = null;
+        runCount = 0;
+        mergePasses = 0;
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns tuples from the child
+     * operator in order.
+     *
+     * @return The next tuple in the ordering, or null if there are no more
+     *         tuples
+     */
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        if (sorted != null)
+            return it.hasNext() ? it.next() : null;
+        return merge.next();
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child = children[0];
+    }
+}
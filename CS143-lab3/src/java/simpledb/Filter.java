@@ -4,13 +4,17 @@ import java.util.*;
 
 /**
  * Filter is an operator that implements a relational select.
+ * <p>
+ * Read by batches, it narrows the selection of each batch of its child with
+ * {@link Predicate#filter(TupleBatch)} and returns the batch itself.
  */
-public class Filter extends Operator {
+public class Filter extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     
     private Predicate p;
     private DbIterator child;
+    private transient BatchIterator batchChild;
 
     /**
      * Constructor accepts a predicate to apply and a child operator to read
@@ -38,6 +42,7 @@ public class Filter extends Operator {
             TransactionAbortedException {
     	super.open();
     	child.open();
+    	batchChild = BatchAdapter.of(child);
     }
 
     public void close() {
@@ -69,6 +74,16 @@ public class Filter extends Operator {
         return null;
     }
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch batch;
+        while((batch = batchChild.nextBatch()) != null){
+        	if(p.filter(batch) > 0){
+        		return batch;
+        	}
+        }
+        return null;
+    }
+
     @Override
     public DbIterator[] getChildren() {
     	DbIterator[] arr = {child};
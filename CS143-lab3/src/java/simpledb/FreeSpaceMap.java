@@ -0,0 +1,138 @@
+package simpledb;
+
+import java.io.*;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records, for each page of a HeapFile, whether the page may
+ * have an empty slot, so that inserts find a page with room without reading
+ * every page of the table.
+ * <p>
+ * The map is only a hint, and may be wrong either way. Marks are set as
+ * soon as a page fills or a tuple is deleted, and are not rolled back when
+ * the transaction aborts; the sidecar file the map is stored in, next to the
+ * table, is only written when the table is closed, so after a crash it may
+ * describe an older state of the table. A page marked as having space may
+ * therefore be full: {@link HeapFile#insertTuple} checks every page it is
+ * offered, marks it full if it is, and asks again. A page marked full may
+ * have an empty slot, which inserts then miss until the map is rebuilt.
+ *
+ * @see HeapFile#insertTuple
+ */
+public class FreeSpaceMap {
+
+    private final BitSet hasSpace;
+    private int numPages;
+    // no page below hint has space
+    private int hint = 0;
+    private boolean modified = false;
+
+    /**
+     * Create a map of numPages pages, none of which has space.
+     */
+    public FreeSpaceMap(int numPages) {
+        this.hasSpace = new BitSet(numPages);
+        this.numPages = numPages;
+    }
+
+    /** @return the number of pages covered by this map */
+    public synchronized int numPages() {
+        return numPages;
+    }
+
+    /**
+     * @return the lowest numbered page at or after from that may have an
+     *         empty slot, or -1 if there is none
+     */
+    public synchronized int nextPageWithSpace(int from) {
+        int p = hasSpace.nextSetBit(Math.max(from, hint));
+        if (from <= hint)
+            hint = p < 0 ? numPages : p;
+        return p;
+    }
+
+    /**
+     * Record whether page may have an empty slot. Pages past the end of the
+     * map extend it.
+     */
+    public synchronized void setHasSpace(int page, boolean space) {
+        if (page >= numPages)
+            numPages = page + 1;
+        if (hasSpace.get(page) == space)
+            return;
+        hasSpace.set(page, space);
+        if (space && page < hint)
+            hint = page;
+        modified = true;
+    }
+
+    /**
+     * @return true if page is marked as possibly having an empty slot
+     */
+    public synchronized boolean hasSpace(int page) {
+        return hasSpace.get(page);
+    }
+
+    /**
+     * Read a map written by {@link #save}.
+     *
+     * @param f the sidecar file
+     * @param numPages the number of pages the table has now
+     * @return the map, or null if f does not exist, cannot be read, or was
+     *         written when the table had a different number of pages
+     */
+    public static FreeSpaceMap load(File f, int numPages) {
+        if (!f.exists())
+            return null;
+        try {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(f)));
+            try {
+                if (in.readInt() != numPages)
+                    return null;
+                FreeSpaceMap map = new FreeSpaceMap(numPages);
+                int words = in.readInt();
+                for (int w = 0; w < words; w++) {
+                    long bits = in.readLong();
+                    for (int b = 0; b < 64; b++) {
+                        if ((bits & (1L << b)) != 0)
+                            map.hasSpace.set(w * 64 + b);
+                    }
+                }
+                return map;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // treat an unreadable map as stale
+            return null;
+        }
+    }
+
+    /**
+     * Write this map to f if it has changed since it was loaded or last
+     * saved.
+     */
+    public synchronized void save(File f) throws IOException {
+        if (!modified && f.exists())
+            return;
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(f)));
+        try {
+            out.writeInt(numPages);
+            int words = (numPages + 63) / 64;
+            out.writeInt(words);
+            for (int w = 0; w < words; w++) {
+                long bits = 0;
+                for (int b = 0; b < 64; b++) {
+                    if (hasSpace.get(w * 64 + b))
+                        bits |= 1L << b;
+                }
+                out.writeLong(bits);
+            }
+        } finally {
+            out.close();
+        }
+        modified = false;
+    }
+}
@@ -1,23 +1,54 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
- * The Join operator implements the relational join operation.
+ * HashEquiJoin evaluates an equality join by building a hash table on the
+ * left(outer) child and probing it with the tuples of the right(inner) child.
+ * <p>
+ * The hash table is limited to a memory budget. When the left child does not
+ * fit, the join becomes a hybrid hash join: both children are split into
+ * {@link #FANOUT} partitions by the hash of their join field, partition 0 of
+ * the left child stays in memory and is probed while the right child is
+ * partitioned, and the other partitions are written to {@link SpillFile}s and
+ * joined pair by pair afterwards. A partition that still does not fit is
+ * partitioned again, with a different hash function, by a nested
+ * HashEquiJoin. Partitions that cannot be split, because all their tuples
+ * share one join key, are joined in budget-sized chunks, with the right
+ * partition scanned once per chunk.
+ * <p>
+ * Read by batches, a join on INT_TYPE fields whose left child fits in memory
+ * probes the hash table with the int vector of each batch of the right
+ * child, and copies the values of the joined tuples straight into the
+ * output batch. Other joins fill their batches a tuple at a time.
  */
-public class HashEquiJoin extends Operator {
+public class HashEquiJoin extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
+
+    /** Default memory budget for the hash table, in bytes. */
+    public static final int DEFAULT_MEMORY_BUDGET = 256 * BufferPool.PAGE_SIZE;
+
+    /** Number of partitions an input is split into when it does not fit. */
+    public static final int FANOUT = 16;
+
+    /** Partitioning depth after which partitions are joined in chunks. */
+    static final int MAX_LEVEL = 3;
+
     private JoinPredicate pred;
     private DbIterator child1, child2;
     private TupleDesc comboTD;
+    private final int memoryBudget;
+    // how many times the inputs have been partitioned before this join
+    private final int level;
     transient private Tuple t1 = null;
     transient private Tuple t2 = null;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
-     * on
-     * 
+     * on. Uses the {@link #DEFAULT_MEMORY_BUDGET}.
+     *
      * @param p
      *            The predicate to use to join the children
      * @param child1
@@ -26,9 +57,34 @@ public class HashEquiJoin extends Operator {
      *            Iterator for the right(inner) relation to join
      */
     public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @param memoryBudget
+     *            Bytes of left tuples to hold in the hash table; at least one
+     *            tuple is held however small this is
+     */
+    public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2,
+            int memoryBudget) {
+        this(p, child1, child2, memoryBudget, 0);
+    }
+
+    private HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2,
+            int memoryBudget, int level) {
         this.pred = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.memoryBudget = memoryBudget;
+        this.level = level;
         comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
 
@@ -39,7 +95,7 @@ public class HashEquiJoin extends Operator {
     public TupleDesc getTupleDesc() {
         return comboTD;
     }
-    
+
     public String getJoinField1Name()
     {
 	return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
@@ -49,34 +105,208 @@ public class HashEquiJoin extends Operator {
     {
 	return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
     }
-    
+
+    /** @return the number of left tuples the hash table holds */
+    public int getCapacity() {
+        return Math.max(1, memoryBudget / child1.getTupleDesc().getSize());
+    }
+
+    /**
+     * @return the number of partitions written to disk by the last open, or
+     *         0 if the join ran in memory
+     */
+    public int getSpilledPartitionCount() {
+        int n = 0;
+        if (partitions != null) {
+            for (int i = 0; i < partitions.length; i++)
+                if (partitions[i] != null)
+                    n++;
+        }
+        return n;
+    }
+
+    /** A pair of partitions spilled to disk. */
+    private static class Partition {
+        SpillFile build;
+        SpillFile probe;
+        HashEquiJoin join;
+        boolean open;
+    }
+
     HashMap<Object, ArrayList<Tuple>> map = new HashMap<Object, ArrayList<Tuple>>();
-    public final static int MAP_SIZE = 20000;
+    // the hash table instead of map when both join fields are INT_TYPE
+    transient private IntHashTable intMap;
+    // tuples in the hash table
+    transient private int mapCount;
+    // the left tuples read so far
+    transient private int buildCount;
+    // the spilled partitions, null while the left child fits in memory;
+    // partitions[i] is null if partition i is in the hash table
+    transient private Partition[] partitions;
+    // true if the left child is joined in chunks because it cannot be split
+    transient private boolean chunked;
+    // true once the right child has been written to the partitions
+    transient private boolean probeSpilled;
+    // partition being joined, -1 while probing the right child
+    transient private int current;
 
+    /**
+     * Read the left child into the hash table, spilling partitions when it
+     * overflows. In chunked mode, read only the next chunk.
+     *
+     * @return true if any tuples were loaded into the hash table
+     */
     private boolean loadMap() throws DbException, TransactionAbortedException {
-        int cnt = 0;
-        map.clear();
+        clearMap();
+        int capacity = getCapacity();
         while (child1.hasNext()) {
             t1 = child1.next();
-            ArrayList<Tuple> list = map.get(t1.getField(pred.getField1()));
-            if (list == null) {
-                list = new ArrayList<Tuple>();
-                map.put(t1.getField(pred.getField1()), list);
+            if (!chunked)
+                buildCount++;
+            Field key = t1.getField(pred.getField1());
+            if (partitions != null) {
+                Partition part = partitions[partitionOf(key)];
+                if (part != null) {
+                    add(part.build, t1);
+                    continue;
+                }
             }
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
+            put(key, t1);
+            if (mapCount < capacity)
+                continue;
+            if (chunked)
+                return true;
+            if (level >= MAX_LEVEL) {
+                // keep what has been read as the first chunk
+                chunked = true;
                 return true;
+            }
+            if (partitions == null)
+                partition();
+            if (mapCount >= capacity)
+                spillResident();
         }
-        return cnt > 0;
+        return mapCount > 0;
+    }
 
+    private void put(Field key, Tuple t) {
+        mapCount++;
+        if (intMap != null) {
+            intMap.add(((IntField) key).getValue(), t);
+            return;
+        }
+        ArrayList<Tuple> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Tuple>();
+            map.put(key, list);
+        }
+        list.add(t);
+    }
+
+    private void clearMap() {
+        map.clear();
+        if (intMap != null)
+            intMap.clear();
+        mapCount = 0;
     }
 
+    /**
+     * Split the hash table into partitions, keeping only partition 0 in it.
+     */
+    private void partition() throws DbException {
+        partitions = new Partition[FANOUT];
+        for (int i = 1; i < FANOUT; i++)
+            partitions[i] = newPartition();
+        if (intMap != null) {
+            Tuple[] resident = new Tuple[intMap.size()];
+            for (int r = 0; r < resident.length; r++)
+                resident[r] = intMap.row(r);
+            clearMap();
+            for (Tuple t : resident) {
+                Field key = t.getField(pred.getField1());
+                Partition part = partitions[partitionOf(key)];
+                if (part == null)
+                    put(key, t);
+                else
+                    add(part.build, t);
+            }
+            return;
+        }
+        Iterator<Map.Entry<Object, ArrayList<Tuple>>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Object, ArrayList<Tuple>> e = it.next();
+            Partition part = partitions[partitionOf((Field) e.getKey())];
+            if (part == null)
+                continue;
+            for (Tuple t : e.getValue())
+                add(part.build, t);
+            mapCount -= e.getValue().size();
+            it.remove();
+        }
+    }
+
+    /**
+     * Move partition 0 from the hash table to disk as well.
+     */
+    private void spillResident() throws DbException {
+        Partition part = newPartition();
+        if (intMap != null) {
+            for (int r = 0; r < intMap.size(); r++)
+                add(part.build, intMap.row(r));
+        }
+        for (ArrayList<Tuple> list : map.values())
+            for (Tuple t : list)
+                add(part.build, t);
+        partitions[0] = part;
+        clearMap();
+    }
+
+    private Partition newPartition() throws DbException {
+        Partition part = new Partition();
+        try {
+            part.build = new SpillFile(child1.getTupleDesc());
+            part.probe = new SpillFile(child2.getTupleDesc());
+        } catch (IOException e) {
+            throw new DbException("could not create partition: " + e.getMessage());
+        }
+        return part;
+    }
+
+    private static void add(SpillFile file, Tuple t) throws DbException {
+        try {
+            file.add(t);
+        } catch (IOException e) {
+            throw new DbException("could not write partition: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the partition of a join key at this join's level; each level
+     *         uses a different hash function so that a partition is split
+     *         again by a nested join
+     */
+    private int partitionOf(Field key) {
+        return SpillFile.partitionOf(key, level, FANOUT);
+    }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
+        boolean intKeys =
+            child1.getTupleDesc().getFieldType(pred.getField1()) == Type.INT_TYPE
+            && child2.getTupleDesc().getFieldType(pred.getField2()) == Type.INT_TYPE;
+        intMap = intKeys ? new IntHashTable(Math.min(getCapacity(), 1024)) : null;
+        probeRow = -1;
+        probeBatch = null;
+        batchRow = -1;
+        batchChild2 = BatchAdapter.of(child2);
+        buildCount = 0;
+        chunked = false;
+        probeSpilled = false;
+        current = -1;
         loadMap();
+        super.open();
     }
 
     public void close() {
@@ -86,21 +316,72 @@ public class HashEquiJoin extends Operator {
         this.t1=null;
         this.t2=null;
         this.listIt=null;
+        this.probeBatch=null;
         this.map.clear();
+        this.intMap=null;
+        if (partitions != null) {
+            for (Partition part : partitions) {
+                if (part == null)
+                    continue;
+                if (part.open)
+                    part.join.close();
+                part.build.delete();
+                part.probe.delete();
+            }
+            partitions = null;
+        }
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        child1.rewind();
+        if (current >= 0 && current < FANOUT && partitions[current] != null
+                && partitions[current].open) {
+            partitions[current].join.close();
+            partitions[current].open = false;
+        }
+        current = -1;
+        listIt = null;
+        probeRow = -1;
+        probeBatch = null;
+        batchRow = -1;
+        if (chunked) {
+            child1.rewind();
+            loadMap();
+        }
+        if (partitions != null && !probeSpilled)
+            finishProbeSpill();
         child2.rewind();
     }
 
+    /**
+     * Write the rest of the right child to the spilled partitions, so that
+     * the probe pass can be restarted without writing any tuple twice.
+     */
+    private void finishProbeSpill() throws DbException, TransactionAbortedException {
+        while (child2.hasNext()) {
+            Tuple t = child2.next();
+            Partition part = partitions[partitionOf(t.getField(pred.getField2()))];
+            if (part != null)
+                add(part.probe, t);
+        }
+        probeSpilled = true;
+    }
+
     transient Iterator<Tuple> listIt = null;
+    // next row of intMap to join with t2, or -1
+    transient private int probeRow = -1;
+
+    // the batch of the right child being probed, the index of its tuple
+    // being joined, and the next row of intMap to join with that tuple or -1
+    transient private TupleBatch probeBatch;
+    transient private int probeIndex;
+    transient private int batchRow = -1;
+    transient private BatchIterator batchChild2;
+    transient private TupleBatch out;
 
     /**
      * Returns the next tuple generated by the join, or null if there are no
      * more tuples. Logically, this is the next tuple in r1 cross r2 that
-     * satisfies the join predicate. There are many possible implementations;
-     * the simplest is a nested loops join.
+     * satisfies the join predicate.
      * <p>
      * Note that the tuples returned from this particular implementation of Join
      * are simply the concatenation of joining tuples from the left and right
@@ -110,12 +391,12 @@ public class HashEquiJoin extends Operator {
      * <p>
      * For example, if one tuple is {1,2,3} and the other tuple is {1,5,6},
      * joined on equality of the first column, then this returns {1,2,3,1,5,6}.
-     * 
+     *
      * @return The next matching tuple.
      * @see JoinPredicate#filter
      */
-    private Tuple processList() throws TransactionAbortedException, DbException {
-        t1 = listIt.next();
+    private Tuple processList(Tuple left) throws TransactionAbortedException, DbException {
+        t1 = left;
 
         int td1n = t1.getTupleDesc().numFields();
         int td2n = t2.getTupleDesc().numFields();
@@ -133,33 +414,129 @@ public class HashEquiJoin extends Operator {
 
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         if (listIt != null && listIt.hasNext()) {
-            return processList();
+            return processList(listIt.next());
+        }
+        if (probeRow >= 0) {
+            Tuple left = intMap.row(probeRow);
+            probeRow = intMap.nextRow(probeRow);
+            return processList(left);
         }
 
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
+        if (current < 0) {
+            if (mapCount == 0 && partitions == null)
+                return null;
+            // loop around child2
+            while (child2.hasNext()) {
+                t2 = child2.next();
+                Field key = t2.getField(pred.getField2());
+                if (partitions != null) {
+                    Partition part = partitions[partitionOf(key)];
+                    if (part != null) {
+                        if (!probeSpilled)
+                            add(part.probe, t2);
+                        continue;
+                    }
+                }
 
-            // if match, create a combined tuple and fill it with the values
-            // from both tuples
-            ArrayList<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
-                continue;
-            listIt = l.iterator();
+                // if match, create a combined tuple and fill it with the values
+                // from both tuples
+                if (intMap != null) {
+                    probeRow = intMap.find(((IntField) key).getValue());
+                    if (probeRow < 0)
+                        continue;
+                    Tuple left = intMap.row(probeRow);
+                    probeRow = intMap.nextRow(probeRow);
+                    return processList(left);
+                }
+                ArrayList<Tuple> l = map.get(key);
+                if (l == null)
+                    continue;
+                listIt = l.iterator();
 
-            return processList();
+                return processList(listIt.next());
+            }
 
+            // child2 is done: advance child1
+            if (chunked) {
+                if (loadMap()) {
+                    child2.rewind();
+                    return fetchNext();
+                }
+                return null;
+            }
+            if (partitions == null)
+                return null;
+            probeSpilled = true;
+            current = 0;
         }
 
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
+        // join the spilled partitions pair by pair
+        for (; current < FANOUT; current++) {
+            Partition part = partitions[current];
+            if (part == null || part.build.size() == 0 || part.probe.size() == 0)
+                continue;
+            if (part.join == null) {
+                // a partition holding every left tuple cannot be split
+                int next = part.build.size() == buildCount ? MAX_LEVEL : level + 1;
+                part.join = new HashEquiJoin(pred, part.build, part.probe,
+                                             memoryBudget, next);
+            }
+            if (!part.open) {
+                part.join.open();
+                part.open = true;
+            }
+            if (part.join.hasNext())
+                return part.join.next();
+            part.join.close();
+            part.open = false;
         }
-
         return null;
     }
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (out == null)
+            out = new TupleBatch(comboTD);
+        out.clear();
+        if (intMap == null || partitions != null || chunked) {
+            Tuple t;
+            while (!out.isFull() && (t = fetchNext()) != null)
+                out.addTuple(t);
+            return out.size() > 0 ? out : null;
+        }
+        int field2 = pred.getField2();
+        int td1n = child1.getTupleDesc().numFields();
+        int td2n = child2.getTupleDesc().numFields();
+        while (!out.isFull()) {
+            if (batchRow >= 0) {
+                int r2 = probeBatch.getSelection()[probeIndex];
+                Tuple left = intMap.row(batchRow);
+                int r = out.addRow();
+                for (int i = 0; i < td1n; i++)
+                    out.set(i, r, left, i);
+                for (int i = 0; i < td2n; i++)
+                    out.set(td1n + i, r, probeBatch, i, r2);
+                batchRow = intMap.nextRow(batchRow);
+                if (batchRow < 0)
+                    probeIndex++;
+                continue;
+            }
+            if (probeBatch == null || probeIndex == probeBatch.size()) {
+                if (mapCount == 0)
+                    break;
+                probeBatch = batchChild2.nextBatch();
+                probeIndex = 0;
+                if (probeBatch == null)
+                    break;
+                continue;
+            }
+            int r2 = probeBatch.getSelection()[probeIndex];
+            batchRow = intMap.find(probeBatch.getInts(field2)[r2]);
+            if (batchRow < 0)
+                probeIndex++;
+        }
+        return out.size() > 0 ? out : null;
+    }
+
     @Override
     public DbIterator[] getChildren() {
         return new DbIterator[]{this.child1, this.child2};
@@ -170,6 +547,6 @@ public class HashEquiJoin extends Operator {
         this.child1 = children[0];
         this.child2 = children[1];
     }
-    
+
 
 }
@@ -1,6 +1,8 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 
@@ -18,6 +20,19 @@ public class HeapFile implements DbFile {
 	
 	private File f;
 	private TupleDesc td;
+	// opened on first use and kept until close(); guarded by this
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	// loaded or rebuilt by the first insert or delete; guarded by this
+	private FreeSpaceMap freeSpace;
+	private boolean fsmDeleteOnExit = false;
+
+	// per-thread buffer that HeapPages serialize into before a write
+	private static final ThreadLocal<ByteBuffer> writeBuffer = new ThreadLocal<ByteBuffer>() {
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(BufferPool.getPageSize());
+		}
+	};
 	
     /**
      * Constructs a heap file backed by the specified file.
@@ -62,20 +77,63 @@ public class HeapFile implements DbFile {
         return this.td;
     }
 
+    /**
+     * Returns the channel used for all page I/O on this file, opening it if
+     * this is the first access since construction or the last close(). The
+     * channel is only used for positional reads and writes, which may run
+     * concurrently.
+     */
+    protected synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            try {
+                raf = new RandomAccessFile(f, "rw");
+            } catch (FileNotFoundException e) {
+                // e.g. a read-only file; writes will fail but reads work
+                raf = new RandomAccessFile(f, "r");
+            }
+            channel = raf.getChannel();
+        }
+        return channel;
+    }
+
+    /**
+     * Closes the file channel held by this HeapFile, saving its free space
+     * map first. The file is reopened automatically if it is used again
+     * afterwards.
+     */
+    public synchronized void close() throws IOException {
+        if (freeSpace != null) {
+            File fsm = getFreeSpaceFile();
+            freeSpace.save(fsm);
+            if (!fsmDeleteOnExit && isTemporary()) {
+                // the table goes away with the JVM, so its sidecar should too
+                fsm.deleteOnExit();
+                fsmDeleteOnExit = true;
+            }
+        }
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            channel = null;
+        }
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
     	HeapPage result = null;
     	try {
-			RandomAccessFile raf = new RandomAccessFile(f, "r");
-			long fileOffput = pid.pageNumber()*BufferPool.PAGE_SIZE;
-	    	raf.seek(fileOffput);
+			FileChannel fc = getChannel();
+			long position = (long)pid.pageNumber()*BufferPool.PAGE_SIZE;
 	    	byte[] data = new byte[BufferPool.PAGE_SIZE];
-	    	raf.read(data);
-	    	raf.close();
+	    	ByteBuffer buf = ByteBuffer.wrap(data);
+	    	// pages past the end of the file read as zeros (empty pages)
+	    	while (buf.hasRemaining()) {
+	    		int n = fc.read(buf, position + buf.position());
+	    		if (n < 0)
+	    			break;
+	    	}
 	    	
 	    	result = new HeapPage(new HeapPageId(pid.getTableId(), pid.pageNumber()), data);
-		} catch (FileNotFoundException e1) {
-			e1.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
 		} 
@@ -86,12 +144,24 @@ public class HeapFile implements DbFile {
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         try{
-        	RandomAccessFile raf = new RandomAccessFile(f, "rw");
-        	long fileOffput = page.getId().pageNumber()*BufferPool.PAGE_SIZE;
-        	raf.seek(fileOffput);
-        	byte[] data = page.getPageData();
-        	raf.write(data);
-        	raf.close();
+        	FileChannel fc = getChannel();
+        	long position = (long)page.getId().pageNumber()*BufferPool.PAGE_SIZE;
+        	ByteBuffer buf;
+        	if (page instanceof HeapPage) {
+        		buf = writeBuffer.get();
+        		if (buf.capacity() < BufferPool.getPageSize()) {
+        			buf = ByteBuffer.allocateDirect(BufferPool.getPageSize());
+        			writeBuffer.set(buf);
+        		}
+        		buf.clear();
+        		((HeapPage)page).writePageData(buf);
+        		buf.flip();
+        	} else {
+        		buf = ByteBuffer.wrap(page.getPageData());
+        	}
+        	while (buf.hasRemaining()) {
+        		fc.write(buf, position + buf.position());
+        	}
         }
         catch(Exception e){
         	throw new IOException("Failed to write page");
@@ -102,26 +172,116 @@ public class HeapFile implements DbFile {
      * Returns the number of pages in this HeapFile.
      */
     public int numPages() {
+        synchronized (this) {
+            if (channel != null && channel.isOpen()) {
+                try {
+                    return (int) (channel.size()/BufferPool.PAGE_SIZE);
+                } catch (IOException e) {
+                    // fall back to the file system below
+                }
+            }
+        }
         return (int) (f.length()/BufferPool.PAGE_SIZE);
     }
 
+    /**
+     * Returns the file the free space map of this HeapFile is saved in.
+     */
+    public File getFreeSpaceFile() {
+        return new File(f.getPath() + ".fsm");
+    }
+
+    /**
+     * Returns true if this file lies in the directory of temporary files,
+     * where tables made with File.createTempFile are.
+     */
+    private boolean isTemporary() throws IOException {
+        File dir = f.getCanonicalFile().getParentFile();
+        return dir != null
+            && dir.equals(new File(System.getProperty("java.io.tmpdir")).getCanonicalFile());
+    }
+
+    /**
+     * Returns the free space map of this file, reading it from its sidecar
+     * file on first use, or rebuilding it from the page headers on disk if
+     * the sidecar is missing or does not match the file.
+     */
+    synchronized FreeSpaceMap getFreeSpaceMap() throws IOException {
+        if (freeSpace == null) {
+            int pages = numPages();
+            freeSpace = FreeSpaceMap.load(getFreeSpaceFile(), pages);
+            if (freeSpace == null)
+                freeSpace = buildFreeSpaceMap(pages);
+        }
+        return freeSpace;
+    }
+
+    /**
+     * Scan the header of every page on disk, bypassing the buffer pool.
+     */
+    private FreeSpaceMap buildFreeSpaceMap(int pages) throws IOException {
+        int slots = (BufferPool.PAGE_SIZE * 8) / (td.getSize() * 8 + 1);
+        ByteBuffer header = ByteBuffer.allocate((slots + 7) / 8);
+        FileChannel fc = getChannel();
+        FreeSpaceMap map = new FreeSpaceMap(pages);
+        for (int p = 0; p < pages; p++) {
+            header.clear();
+            long position = (long)p * BufferPool.PAGE_SIZE;
+            while (header.hasRemaining()) {
+                if (fc.read(header, position + header.position()) < 0)
+                    break;
+            }
+            map.setHasSpace(p, hasEmptySlot(header.array(), slots));
+        }
+        return map;
+    }
+
+    private static boolean hasEmptySlot(byte[] header, int slots) {
+        for (int i = 0; i < slots / 8; i++) {
+            if (header[i] != (byte) 0xFF)
+                return true;
+        }
+        for (int i = slots - slots % 8; i < slots; i++) {
+            if ((header[i / 8] & (1 << (i % 8))) == 0)
+                return true;
+        }
+        return false;
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         ArrayList<Page> changedPages = new ArrayList<Page>();
-        for(int i = 0; i < numPages(); i++){
-        	HeapPage openPage = (HeapPage)(Database.getBufferPool().getPage(tid, new HeapPageId(getId(), i), Permissions.READ_WRITE));
-        	if(openPage.getNumEmptySlots() != 0){
-        		changedPages.add(openPage);
-        		openPage.insertTuple(t);
-        		return changedPages;
-        	}
+        FreeSpaceMap map = getFreeSpaceMap();
+        while (true) {
+            int numPages = numPages();
+            for (int i = map.nextPageWithSpace(0); i >= 0 && i < numPages;
+                    i = map.nextPageWithSpace(i + 1)) {
+            	HeapPageId pid = new HeapPageId(getId(), i);
+            	boolean locked = Database.getBufferPool().holdsLock(tid, pid);
+            	HeapPage openPage = (HeapPage)(Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE));
+            	if(openPage.getNumEmptySlots() != 0){
+            		changedPages.add(openPage);
+            		openPage.insertTuple(t);
+            		if (openPage.getNumEmptySlots() == 0)
+            			map.setHasSpace(i, false);
+            		return changedPages;
+            	}
+            	// the map was out of date; the page was only read, so a lock
+            	// taken just to look at it need not be held until commit
+            	map.setHasSpace(i, false);
+            	if(!locked)
+            		Database.getBufferPool().releasePage(tid, pid);
+            }
+            // Append an empty page and insert into its pooled copy, so that
+            // the tuple only reaches disk if tid commits.
+            synchronized (this) {
+                if (numPages() == numPages) {
+                    writePage(new HeapPage(new HeapPageId(getId(), numPages), HeapPage.createEmptyPageData()));
+                    map.setHasSpace(numPages, true);
+                }
+            }
         }
-        HeapPage newPage = new HeapPage(new HeapPageId(getId(), numPages()), HeapPage.createEmptyPageData());
-        newPage.insertTuple(t);
-        changedPages.add(newPage);
-        writePage(newPage);
-        return changedPages;
     }
 
     // see DbFile.java for javadocs
@@ -131,6 +291,11 @@ public class HeapFile implements DbFile {
     	HeapPage page = (HeapPage)Database.getBufferPool().getPage(tid, t.getRecordId().getPageId(), Permissions.READ_WRITE);
     	changedPages.add(page);
     	page.deleteTuple(t);
+    	try {
+    		getFreeSpaceMap().setHasSpace(page.getId().pageNumber(), true);
+    	} catch (IOException e) {
+    		throw new DbException("could not read free space map: " + e.getMessage());
+    	}
         return changedPages;
     	
     }
@@ -140,5 +305,14 @@ public class HeapFile implements DbFile {
         return new HeapFileIterator(tid, this);
     }
 
+    /**
+     * Returns an iterator over the tuples of pages firstPage up to but not
+     * including endPage only; iterators over disjoint ranges may be used on
+     * different threads at the same time.
+     */
+    public DbFileIterator iterator(TransactionId tid, int firstPage, int endPage) {
+        return new HeapFileIterator(tid, this, firstPage, endPage);
+    }
+
 }
 
@@ -1,5 +1,6 @@
 package simpledb;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -13,7 +14,11 @@ public class HeapFileIterator implements DbFileIterator{
 	private HeapPage currPage;
 	private PageId currPageId;
 	private int currPageNumber;
+	// the tuples of currPage, null until they are first read one at a time
 	private Iterator<Tuple> tupleIterator;
+	// the next slot of currPage to copy into a batch, or -1 if currPage is
+	// not read by batches
+	private int batchSlot;
 	
 	private HeapPage nextPage;
 	private PageId nextPageId;
@@ -21,24 +26,62 @@ public class HeapFileIterator implements DbFileIterator{
 	private Iterator<Tuple> nextTupleIterator;
 	
 	
+	// the pages scanned are [firstPage, endPage); endPage is -1 to scan to
+	// the end of the file, however long it grows
+	private int firstPage;
+	private int endPage;
+	
 	private boolean open;
+	// private frames for scans over tables too large to cache; null otherwise
+	private BufferRing ring;
+	private ReadAhead readAhead;
 	
 	public HeapFileIterator(TransactionId inputTid, HeapFile target){
+		this(inputTid, target, 0, -1);
+	}
+	
+	/**
+	 * Iterator over the tuples of pages firstPage up to but not including
+	 * endPage of target, so that disjoint parts of a file can be scanned
+	 * at the same time.
+	 */
+	public HeapFileIterator(TransactionId inputTid, HeapFile target, int firstPage, int endPage){
 		tid = inputTid;
 		file = target;
+		this.firstPage = firstPage;
+		this.endPage = endPage;
 		currPage = null;
 		currPageId = null;
-		currPageNumber = 0;
+		currPageNumber = firstPage;
 		tupleIterator = null;
 		open = false;
 	}
 	
+	/** @return the page after the last page to scan */
+	private int endPage(){
+		int pages = file.numPages();
+		return endPage < 0 ? pages : Math.min(endPage, pages);
+	}
+	
   public void open()
       throws DbException, TransactionAbortedException{
+  	BufferPool pool = Database.getBufferPool();
+  	if(endPage >= 0 && currPageNumber >= endPage()){
+  		currPage = null;
+  		tupleIterator = Collections.<Tuple>emptyList().iterator();
+  		open = true;
+  		return;
+  	}
+  	ring = BufferRing.forScan(pool, endPage() - firstPage);
+  	if (readAhead != null)
+  		readAhead.cancel();
+  	readAhead = new ReadAhead(pool, file, ring, endPage);
+  	readAhead.accessed(currPageNumber);
   	currPageId = new HeapPageId(file.getId(), currPageNumber);
-  	currPage = (HeapPage)(Database.getBufferPool().getPage(tid, currPageId, null));
+  	currPage = (HeapPage)(Database.getBufferPool().getPage(tid, currPageId, null, ring));
   	//currPage = (HeapPage)(file.readPage(currPageId));
-  	tupleIterator = currPage.iterator();
+  	tupleIterator = null;
+  	batchSlot = -1;
   	open = true;
   }
 
@@ -48,14 +91,15 @@ public class HeapFileIterator implements DbFileIterator{
   	if(!open){
   		return false;
   	}
-  	if(tupleIterator.hasNext()){
+  	if(pageTuples().hasNext()){
   		return true;
   	}
-  	else if(currPageNumber < file.numPages()){
-  		for(int i = 1; currPageNumber+i < file.numPages(); i++ ){
+  	else if(currPageNumber < endPage()){
+  		for(int i = 1; currPageNumber+i < endPage(); i++ ){
   			nextPageNumber = currPageNumber+i;
       		nextPageId = new HeapPageId(file.getId(), nextPageNumber);
-          	nextPage = (HeapPage)(Database.getBufferPool().getPage(tid, nextPageId, null));
+      		readAhead.accessed(nextPageNumber);
+          	nextPage = (HeapPage)(Database.getBufferPool().getPage(tid, nextPageId, null, ring));
           	nextTupleIterator = nextPage.iterator();
           	if(nextTupleIterator.hasNext()){
           		return true;
@@ -78,10 +122,10 @@ public class HeapFileIterator implements DbFileIterator{
   	if(!open /*|| !hasNext()*/){
   		throw new NoSuchElementException();
   	}
-  	else if(tupleIterator.hasNext()){
+  	else if(pageTuples().hasNext()){
   		return tupleIterator.next();
   	}
-  	else if(currPageNumber < file.numPages()){
+  	else if(currPageNumber < endPage()){
   		currPageId = nextPageId;
   		currPage = nextPage;
   		currPageNumber = nextPageNumber;
@@ -92,12 +136,60 @@ public class HeapFileIterator implements DbFileIterator{
   	throw new NoSuchElementException();
   }
 
+  private Iterator<Tuple> pageTuples(){
+  	if(tupleIterator == null){
+  		tupleIterator = currPage.iterator();
+  	}
+  	return tupleIterator;
+  }
+
+  /**
+   * Append the tuples after the last one returned to batch, until it is full
+   * or there are no more. The tuples of the pages are copied straight from
+   * their bytes, without creating Tuples for them. Once this has been called,
+   * next may not be until the iterator is rewound.
+   *
+   * @return true if any tuples were appended
+   */
+  boolean nextBatch(TupleBatch batch)
+      throws DbException, TransactionAbortedException{
+  	if(!open || currPage == null){
+  		return false;
+  	}
+  	int before = batch.size();
+  	if(tupleIterator == null && batchSlot < 0){
+  		batchSlot = 0;
+  	}
+  	while(!batch.isFull()){
+  		if(batchSlot < 0){
+  			// the rest of a page whose tuples have been read one at a time
+  			if(tupleIterator.hasNext()){
+  				batch.addTuple(tupleIterator.next());
+  				continue;
+  			}
+  		}
+  		else if(batchSlot < currPage.numSlots){
+  			batchSlot = currPage.fillBatch(batch, batchSlot);
+  			continue;
+  		}
+  		if(currPageNumber + 1 >= endPage()){
+  			break;
+  		}
+  		currPageNumber++;
+  		readAhead.accessed(currPageNumber);
+  		currPageId = new HeapPageId(file.getId(), currPageNumber);
+  		currPage = (HeapPage)(Database.getBufferPool().getPage(tid, currPageId, null, ring));
+  		batchSlot = 0;
+  	}
+  	return batch.size() > before;
+  }
+
   /**
    * Resets the iterator to the start.
    * @throws DbException When rewind is unsupported.
    */
   public void rewind() throws DbException, TransactionAbortedException{
-  	currPageNumber = 0;
+  	currPageNumber = firstPage;
   	open();
   }
 
@@ -108,6 +200,11 @@ public class HeapFileIterator implements DbFileIterator{
   	currPageId = null;
   	currPage = null;
   	tupleIterator = null;
+  	ring = null;
+  	if (readAhead != null) {
+  		readAhead.cancel();
+  		readAhead = null;
+  	}
   	open = false;
   }
 }
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
@@ -16,8 +17,14 @@ public class HeapPage implements Page {
     final HeapPageId pid;
     final TupleDesc td;
     final byte header[];
+    // tuples[i] is created from data on first access to a used slot i
     final Tuple tuples[];
     final int numSlots;
+    // the bytes this page was read from and the offset of its first slot
+    private final ByteBuffer data;
+    private final int slotBase;
+    // slots inserted into or deleted from since the page was read
+    private final BitSet dirtySlots = new BitSet();
     
     private boolean dirtyPage;
     private TransactionId dirtyTransaction;
@@ -37,36 +44,53 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * Tuples are not decoded here: the page keeps data, which the caller
+     * must not modify afterwards, and hands out tuples whose fields are
+     * decoded from it on first use.
+     * <p>
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+        // data is never written to, so it doubles as the before image
+        oldData = data;
+    }
+
+    /**
+     * Create a HeapPage directly from a buffer holding the page's bytes,
+     * starting at the buffer's current position, in the format described by
+     * {@link #HeapPage(HeapPageId, byte[])}. The buffer may be a mapped
+     * region of the table file: it is read with absolute gets only and is
+     * never modified. Tuples are decoded from it lazily, so its contents must
+     * not change while the page is in use.
+     * <p>
+     * The before image of a page built this way is not captured until the
+     * page is first modified; until then it equals the page itself.
+     *
+     * @throws IOException if the buffer holds less than a full page
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
         
         dirtyPage = false;
         dirtyTransaction = null;
-        
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+
+        int base = data.position();
+        if (data.remaining() < getHeaderSize() + numSlots * td.getSize())
+            throw new EOFException("truncated page " + id.pageNumber());
 
         // allocate and read the header slots of this page
         header = new byte[getHeaderSize()];
         for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
+            header[i] = data.get(base + i);
 
-        setBeforeImage();
+        this.data = data;
+        this.slotBase = base + header.length;
+        tuples = new Tuple[numSlots];
     }
 
     /** Retrieve the number of tuples on this page.
@@ -94,6 +118,9 @@ public class HeapPage implements Page {
             {
                 oldDataRef = oldData;
             }
+            // not yet captured: the page has not been modified
+            if (oldDataRef == null)
+                oldDataRef = getPageData();
             return new HeapPage(pid,oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
@@ -106,7 +133,16 @@ public class HeapPage implements Page {
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        oldData = getPageData();
+        }
+    }
+
+    /** Capture the before image if it was deferred at construction. */
+    private void captureBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        if (oldData == null)
+            oldData = getPageData();
         }
     }
 
@@ -118,36 +154,16 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Return the tuple in slotId, creating a view of its stored bytes on the
+     * first access, or null if the slot is empty.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
-
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+    private Tuple getTuple(int slotId) {
+        Tuple t = tuples[slotId];
+        if (t == null && isSlotUsed(slotId)) {
+            t = new Tuple(td, data, slotBase + slotId * td.getSize());
+            t.setRecordId(new RecordId(pid, slotId));
+            tuples[slotId] = t;
         }
-
         return t;
     }
 
@@ -160,67 +176,97 @@ public class HeapPage implements Page {
      * have it produce an identical HeapPage object.
      *
      * @see #HeapPage
+     * @see #writePageData
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
+        byte[] out = new byte[BufferPool.getPageSize()];
+        writePageData(ByteBuffer.wrap(out));
+        return out;
+    }
 
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
+    /**
+     * Serializes this page into out, starting at its position, in the format
+     * returned by {@link #getPageData}, and advances the position by one
+     * page. Slots that have not changed since the page was read are copied
+     * in bulk from the bytes the page was read from, so a clean page is
+     * written without encoding any field.
+     *
+     * @throws java.nio.BufferOverflowException if out has less than a page
+     *         remaining
+     */
+    public void writePageData(ByteBuffer out) {
+        int len = BufferPool.getPageSize();
+        if (out.remaining() < len)
+            throw new java.nio.BufferOverflowException();
+        int start = out.position();
+        int tupleSize = td.getSize();
+        int slotsEnd = header.length + tupleSize * tuples.length;
+
+        if (isClean()) {
+            ByteBuffer src = data.duplicate();
+            src.position(slotBase - header.length);
+            src.limit(slotBase + tupleSize * tuples.length);
+            out.put(src);
+        } else {
+            // create the header of the page
+            out.put(header);
+
+            // create the tuples
+            int offset = start + header.length;
+            for (int i=0; i<tuples.length; i++, offset += tupleSize) {
+                if (!isSlotUsed(i)) {
+                    // empty slot
+                    fill(out, offset, tupleSize);
+                } else if (!dirtySlots.get(i)
+                        && (tuples[i] == null || tuples[i].isViewOf(data, slotBase + i * tupleSize))) {
+                    // unchanged slot
+                    ByteBuffer src = data.duplicate();
+                    src.position(slotBase + i * tupleSize);
+                    src.limit(slotBase + (i + 1) * tupleSize);
+                    out.position(offset);
+                    out.put(src);
+                } else {
+                    // non-empty slot
+                    Tuple t = tuples[i];
+                    for (int j=0; j<td.numFields(); j++) {
+                        t.getField(j).serialize(out, offset + td.getFieldOffset(j));
                     }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
                 }
             }
         }
 
         // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        fill(out, start + slotsEnd, len - slotsEnd);
+        out.position(start + len);
+    }
 
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * @return true if no slot has changed since this page was read, so that
+     *         its original bytes still describe it
+     */
+    private boolean isClean() {
+        if (!dirtySlots.isEmpty())
+            return false;
+        int tupleSize = td.getSize();
+        for (int i=0; i<tuples.length; i++) {
+            Tuple t = tuples[i];
+            if (t != null && !t.isViewOf(data, slotBase + i * tupleSize))
+                return false;
         }
+        return true;
+    }
 
-        return baos.toByteArray();
+    private static final byte[] ZEROS = new byte[BufferPool.PAGE_SIZE];
+
+    /** Zero len bytes of out starting at the absolute index offset. */
+    private static void fill(ByteBuffer out, int offset, int len) {
+        out.position(offset);
+        while (len > 0) {
+            int n = Math.min(len, ZEROS.length);
+            out.put(ZEROS, 0, n);
+            len -= n;
+        }
     }
 
     /**
@@ -248,8 +294,16 @@ public class HeapPage implements Page {
         if(t.getRecordId().getPageId() != pid || !isSlotUsed(t.getRecordId().tupleno())){
         	throw new DbException("Tuple not on page, cannot delete");
         }
-        markSlotUsed(t.getRecordId().tupleno(), false);
-        tuples[t.getRecordId().tupleno()] = null;
+        captureBeforeImage();
+        int slot = t.getRecordId().tupleno();
+        // tuples handed out for this slot must not see the slot's next occupant
+        Tuple stored = tuples[slot];
+        if (stored != null)
+            stored.materialize();
+        t.materialize();
+        markSlotUsed(slot, false);
+        dirtySlots.set(slot);
+        tuples[slot] = null;
         //What should the tuplenumber be after removal? defaulting to -1
         t.setRecordId(new RecordId(null, -1));
     }
@@ -265,9 +319,13 @@ public class HeapPage implements Page {
         if(getNumEmptySlots() == 0 || !(t.getTupleDesc().equals(td))){
         	throw new DbException("Tuple cannot be inserted");
         }
+        captureBeforeImage();
+        // t may be a view of another page's bytes
+        t.materialize();
         for(int i = 0; i < numSlots; i++){
     		if(!isSlotUsed(i)){
     			markSlotUsed(i, true);
+    			dirtySlots.set(i);
     			tuples[i] = t;
     			t.setRecordId(new RecordId(pid, i));
     			return;
@@ -338,6 +396,30 @@ public class HeapPage implements Page {
         }
     }
 
+    /**
+     * Copy the tuples of the used slots from slot on into batch, until it is
+     * full. The values of tuples that have not changed since the page was
+     * read are copied straight from the page bytes, without creating the
+     * tuples.
+     *
+     * @return the slot after the last one copied, or the number of slots if
+     *         the rest of the page was copied
+     */
+    int fillBatch(TupleBatch batch, int slot) {
+        int size = td.getSize();
+        for (; slot < numSlots && !batch.isFull(); slot++) {
+            if (!isSlotUsed(slot))
+                continue;
+            int offset = slotBase + slot * size;
+            Tuple t = tuples[slot];
+            if (t != null && !t.isViewOf(data, offset))
+                batch.addTuple(t);
+            else
+                batch.addRow(data, offset);
+        }
+        return slot;
+    }
+
     /**
      * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
      * (note that this iterator shouldn't return tuples in empty slots!)
@@ -347,7 +429,7 @@ public class HeapPage implements Page {
     	ArrayList<Tuple> tupList = new ArrayList<Tuple>();
     	for(int i = 0; i < numSlots; i++){
     		if(isSlotUsed(i)){
-    			tupList.add(tuples[i]);
+    			tupList.add(getTuple(i));
     		}
     	}
         return tupList.iterator();
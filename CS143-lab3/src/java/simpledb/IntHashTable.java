@@ -0,0 +1,136 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * IntHashTable is the build side of a {@link HashEquiJoin} on an
+ * {@link Type#INT_TYPE} join field. It maps int keys to tuples without boxing
+ * the keys or allocating a list per key: tuples are appended to a flat array
+ * of rows, the rows of one key are chained through an int array, and the
+ * distinct keys are found by linear probing in an open-addressing table.
+ * <p>
+ * The rows of a key are visited with
+ * <pre>
+ * for (int r = table.find(key); r &gt;= 0; r = table.nextRow(r))
+ *     ... table.row(r) ...
+ * </pre>
+ * most recently added first.
+ */
+final class IntHashTable {
+
+    private static final int MIN_SLOTS = 16;
+
+    // slot s is slots[2s], the key, and slots[2s + 1], the last row with the
+    // key plus one; 0 there marks an empty slot. Keeping both in one array
+    // costs a probe one cache miss rather than two.
+    private int[] slots;
+    private int keyCount = 0;
+
+    private Tuple[] rows;
+    // nextRows[r] is the previous row with the key of row r, or -1
+    private int[] nextRows;
+    private int rowCount = 0;
+
+    /**
+     * Create an empty table.
+     *
+     * @param expectedRows
+     *            the number of rows to size the table for
+     */
+    IntHashTable(int expectedRows) {
+        int rows = Math.max(expectedRows, MIN_SLOTS / 2);
+        this.rows = new Tuple[rows];
+        this.nextRows = new int[rows];
+        int n = MIN_SLOTS;
+        while (n < 2 * rows)
+            n <<= 1;
+        this.slots = new int[2 * n];
+    }
+
+    /** Add a tuple with the specified key. */
+    void add(int key, Tuple t) {
+        if (rowCount == rows.length) {
+            rows = Arrays.copyOf(rows, 2 * rows.length);
+            nextRows = Arrays.copyOf(nextRows, 2 * nextRows.length);
+        }
+        int s = slot(key);
+        if (slots[s + 1] == 0) {
+            if (4 * (keyCount + 1) > slots.length) {
+                grow();
+                s = slot(key);
+            }
+            slots[s] = key;
+            keyCount++;
+        }
+        rows[rowCount] = t;
+        nextRows[rowCount] = slots[s + 1] - 1;
+        slots[s + 1] = ++rowCount;
+    }
+
+    /**
+     * @return the last row added with the key, or -1 if there is none
+     */
+    int find(int key) {
+        return slots[slot(key) + 1] - 1;
+    }
+
+    /**
+     * @return the row added with the key of row r before it, or -1 if there
+     *         is none
+     */
+    int nextRow(int r) {
+        return nextRows[r];
+    }
+
+    /** @return the tuple of row r */
+    Tuple row(int r) {
+        return rows[r];
+    }
+
+    /** @return the number of rows, which are numbered from 0 in the order they were added */
+    int size() {
+        return rowCount;
+    }
+
+    /** Remove every row, keeping the allocated arrays. */
+    void clear() {
+        Arrays.fill(rows, 0, rowCount, null);
+        Arrays.fill(slots, 0);
+        rowCount = 0;
+        keyCount = 0;
+    }
+
+    /**
+     * @return the index in slots of the slot that holds key, or of the empty
+     *         slot where it belongs
+     */
+    private int slot(int key) {
+        int mask = slots.length / 2 - 1;
+        int s = mix(key) & mask;
+        while (slots[2 * s + 1] != 0 && slots[2 * s] != key)
+            s = (s + 1) & mask;
+        return 2 * s;
+    }
+
+    /** Double the number of slots and re-insert the keys. */
+    private void grow() {
+        int[] old = slots;
+        slots = new int[2 * old.length];
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i + 1] != 0) {
+                int s = slot(old[i]);
+                slots[s] = old[i];
+                slots[s + 1] = old[i + 1];
+            }
+        }
+    }
+
+    /**
+     * Spread the bits of a key, so that keys that differ only in their high
+     * bits do not collide in the low bits used to pick a slot.
+     */
+    private static int mix(int key) {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 /**
  * Knows how to compute some aggregate over a set of IntFields.
  */
@@ -23,7 +24,7 @@ public class IntegerAggregator implements Aggregator {
      * @param what
      *            the aggregation operator
      */
-    private HashMap<Field, ArrayList<Field>> groupings;
+    private HashMap<Field, Accumulator> groupings;
     
     
     private int groupField;
@@ -36,37 +37,86 @@ public class IntegerAggregator implements Aggregator {
         aggField = afield;
         operator = what;
         
-        groupings = new HashMap<Field, ArrayList<Field>>();
+        groupings = new HashMap<Field, Accumulator>();
         if(groupField == Aggregator.NO_GROUPING){
-        	groupings.put(new IntField(Aggregator.NO_GROUPING), new ArrayList<Field>());
+        	groupings.put(new IntField(Aggregator.NO_GROUPING), new Accumulator());
         }
     }
 
     /**
      * Merge a new tuple into the aggregate, grouping as indicated in the
-     * constructor
+     * constructor. Only the running count, sum, minimum and maximum of each
+     * group are kept, not the values themselves.
      * 
      * @param tup
      *            the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        if(groupField == Aggregator.NO_GROUPING){
-        	Field tupGet = tup.getField(aggField);
-        	ArrayList<Field> vec = groupings.get(new IntField(Aggregator.NO_GROUPING));
-        	vec.add(tupGet);
-        	//groupings.get(Aggregator.NO_GROUPING).add(tup.getField(aggField));
+        Field key = groupField == Aggregator.NO_GROUPING
+            ? new IntField(Aggregator.NO_GROUPING) : tup.getField(groupField);
+        Accumulator acc = groupings.get(key);
+        if(acc == null){
+        	acc = new Accumulator();
+        	groupings.put(key, acc);
         }
-        else{
-        	if(groupings.containsKey(tup.getField(groupField))){
-        		groupings.get(tup.getField(groupField)).add(tup.getField(aggField));
-        	}
-        	else{
-        		groupings.put(tup.getField(groupField), new ArrayList<Field>());
-        		groupings.get(tup.getField(groupField)).add(tup.getField(aggField));
-        	}
+        acc.add(((IntField) tup.getField(aggField)).getValue());
+    }
+
+    /**
+     * Merge the tuples of a batch, reading the aggregate values from its int
+     * vector. Consecutive tuples of one group are merged with one lookup.
+     */
+    public void mergeBatchIntoGroups(TupleBatch batch) {
+        int[] sel = batch.getSelection();
+        int[] values = batch.getInts(aggField);
+        // the group of the last tuple; an INT_TYPE group value is compared
+        // on the int vector, without creating a Field for every tuple
+        int[] intKeys = groupField != Aggregator.NO_GROUPING && groupFieldType == Type.INT_TYPE
+            ? batch.getInts(groupField) : null;
+        Field key = null;
+        Accumulator acc = null;
+        if(groupField == Aggregator.NO_GROUPING)
+            acc = groupings.get(new IntField(Aggregator.NO_GROUPING));
+        for(int i = 0; i < batch.size(); i++){
+            int r = sel[i];
+            if(groupField != Aggregator.NO_GROUPING){
+                boolean same = key != null && (intKeys != null
+                    ? ((IntField) key).getValue() == intKeys[r]
+                    : key.equals(batch.getField(groupField, r)));
+                if(!same){
+                    key = batch.getField(groupField, r);
+                    acc = groupings.get(key);
+                    if(acc == null){
+                        acc = new Accumulator();
+                        groupings.put(key, acc);
+                    }
+                }
+            }
+            acc.add(values[r]);
         }
     }
 
+    public int getGroupCount() {
+        return groupings.size();
+    }
+
+    public void merge(Aggregator other) {
+        for(Map.Entry<Field, Accumulator> group : ((IntegerAggregator) other).groupings.entrySet()){
+            Accumulator acc = groupings.get(group.getKey());
+            if(acc == null){
+                acc = new Accumulator();
+                groupings.put(group.getKey(), acc);
+            }
+            acc.merge(group.getValue());
+        }
+    }
+
+    public boolean hasGroup(Field groupValue) {
+        if(groupField == Aggregator.NO_GROUPING)
+            return true;
+        return groupings.containsKey(groupValue);
+    }
+
     /**
      * Create a DbIterator over group aggregate results.
      * 
@@ -80,120 +130,26 @@ public class IntegerAggregator implements Aggregator {
     	TupleDesc resultDesc;
     	if(groupField == Aggregator.NO_GROUPING){
         	resultDesc = new TupleDesc(new Type[]{Type.INT_TYPE});
-        	Tuple resultTup = new Tuple(resultDesc);
-        	switch(operator){
-	    		case MIN:
-	    			int min = Integer.MAX_VALUE;
-	    			for(Field value : groupings.get(new IntField(Aggregator.NO_GROUPING))){
-	    				IntField castValue = (IntField)value;
-	    				if(castValue.getValue() < min){
-	    					min = castValue.getValue();
-	    				}
-	    			}
-	    			resultTup.setField(0, new IntField(min));
-	    			resultTuples.add(resultTup);
-	    			break;
-	    		case MAX:
-	    			int max = Integer.MIN_VALUE;
-	    			for(Field value : groupings.get(new IntField(Aggregator.NO_GROUPING))){
-	    				IntField castValue = (IntField)value;
-	    				if(castValue.getValue() > max){
-	    					max = castValue.getValue();
-	    				}
-	    			}
-	    			resultTup.setField(0, new IntField(max));
-	    			resultTuples.add(resultTup);
-	    			break;
-	    		case COUNT:
-	    			int count = groupings.get(new IntField(Aggregator.NO_GROUPING)).size();
-	    			resultTup.setField(0, new IntField(count));
-	    			resultTuples.add(resultTup);
-	    			break;
-	    		case AVG:
-	    			int average = 0;
-	    			for(Field value : groupings.get(new IntField(Aggregator.NO_GROUPING))){
-	    				IntField castValue = (IntField)value;
-	    				average += castValue.getValue();
-	    			}
-	    			resultTup.setField(0, new IntField(average/groupings.get(new IntField(Aggregator.NO_GROUPING)).size()));
-	    			resultTuples.add(resultTup);
-	    			break;
-	    		case SUM:
-	    			int sum = 0;
-	    			for(Field value : groupings.get(new IntField(Aggregator.NO_GROUPING))){
-	    				IntField castValue = (IntField)value;
-	    				sum += castValue.getValue();
-	    			}
-	    			resultTup.setField(0, new IntField(sum));
-	    			resultTuples.add(resultTup);
-	    			break;
-	    		default:
-	    			break;
+        	Field value = groupings.get(new IntField(Aggregator.NO_GROUPING)).result(operator);
+        	if(value != null){
+        		Tuple resultTup = new Tuple(resultDesc);
+        		resultTup.setField(0, value);
+        		resultTuples.add(resultTup);
         	}
-        	return new TupleIterator(resultDesc, resultTuples);
     	}
     	else{
     		resultDesc = new TupleDesc(new Type[]{groupFieldType, Type.INT_TYPE});
-    		for(Field key : groupings.keySet()){
+    		for(Map.Entry<Field, Accumulator> group : groupings.entrySet()){
+    			Field value = group.getValue().result(operator);
+    			if(value == null)
+    				continue;
     			Tuple resultTup = new Tuple(resultDesc);
-    			switch(operator){
-		    		case MIN:
-		    			int min = Integer.MAX_VALUE;
-		    			for(Field value : groupings.get(key)){
-		    				IntField castValue = (IntField)value;
-		    				if(castValue.getValue() < min){
-		    					min = castValue.getValue();
-		    				}
-		    			}
-		    			resultTup.setField(0, key);
-		    			resultTup.setField(1, new IntField(min));
-		    			resultTuples.add(resultTup);
-		    			break;
-		    		case MAX:
-		    			int max = Integer.MIN_VALUE;
-		    			for(Field value : groupings.get(key)){
-		    				IntField castValue = (IntField)value;
-		    				if(castValue.getValue() > max){
-		    					max = castValue.getValue();
-		    				}
-		    			}
-		    			resultTup.setField(0, key);
-		    			resultTup.setField(1, new IntField(max));
-		    			resultTuples.add(resultTup);
-		    			break;
-		    		case COUNT:
-		    			int count = groupings.get(key).size();
-		    			resultTup.setField(0, key);
-		    			resultTup.setField(1, new IntField(count));
-		    			resultTuples.add(resultTup);
-		    			break;
-		    		case AVG:
-		    			int average = 0;
-		    			for(Field value : groupings.get(key)){
-		    				IntField castValue = (IntField)value;
-		    				average += castValue.getValue();
-		    			}
-		    			resultTup.setField(0, key);
-		    			resultTup.setField(1, new IntField(average/groupings.get(key).size()));
-		    			resultTuples.add(resultTup);
-		    			break;
-		    		case SUM:
-		    			int sum = 0;
-		    			for(Field value : groupings.get(key)){
-		    				IntField castValue = (IntField)value;
-		    				sum += castValue.getValue();
-		    			}
-		    			resultTup.setField(0, key);
-		    			resultTup.setField(1, new IntField(sum));
-		    			resultTuples.add(resultTup);
-		    			break;
-		    		default:
-		    			break;
-    			}
+    			resultTup.setField(0, group.getKey());
+    			resultTup.setField(1, value);
+    			resultTuples.add(resultTup);
         	}
-    		return new TupleIterator(resultDesc, resultTuples);
     	}
-        
+    	return new TupleIterator(resultDesc, resultTuples);
     }
 
 }
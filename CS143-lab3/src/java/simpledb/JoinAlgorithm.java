@@ -0,0 +1,69 @@
+package simpledb;
+
+/**
+ * The physical algorithms the {@link JoinOptimizer} can choose from to
+ * evaluate a {@link LogicalJoinNode}. Each is costed by
+ * {@link JoinOptimizer#estimateJoinCost(JoinAlgorithm, LogicalJoinNode, int, int, double, double)}
+ * and built by {@link JoinOptimizer#instantiateJoin}.
+ */
+public enum JoinAlgorithm {
+
+    /** Tuple-at-a-time nested loops, {@link Join}. */
+    NESTED_LOOP("nested loop"),
+
+    /** Block nested loops, {@link BlockNestedLoopJoin}. */
+    BLOCK_NESTED_LOOP("block nested loop"),
+
+    /** Hybrid hash join, {@link HashEquiJoin}; equality only. */
+    HASH("hash"),
+
+    /** Sort-merge join, {@link SortMergeJoin}; equality and ranges. */
+    SORT_MERGE("sort-merge"),
+
+    /** In-memory hash join on several threads, {@link ParallelHashJoin};
+     * equality only. */
+    PARALLEL_HASH("parallel hash");
+
+    private final String name;
+
+    private JoinAlgorithm(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return true if this algorithm can evaluate joins with the predicate op
+     */
+    public boolean supports(Predicate.Op op) {
+        switch (this) {
+        case HASH:
+        case PARALLEL_HASH:
+            return op == Predicate.Op.EQUALS;
+        case SORT_MERGE:
+            return SortMergeJoin.supports(op);
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * @return the algorithm the operator j evaluates a join with, or null if
+     *         j is not a join
+     */
+    public static JoinAlgorithm of(DbIterator j) {
+        if (j instanceof SortMergeJoin)
+            return SORT_MERGE;
+        if (j instanceof ParallelHashJoin)
+            return PARALLEL_HASH;
+        if (j instanceof BlockNestedLoopJoin)
+            return BLOCK_NESTED_LOOP;
+        if (j instanceof Join)
+            return NESTED_LOOP;
+        if (j instanceof HashEquiJoin)
+            return HASH;
+        return null;
+    }
+
+    @Override public String toString() {
+        return name;
+    }
+}
@@ -68,7 +68,31 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        JoinAlgorithm algorithm = lj.algorithm;
+        if (algorithm == null || !algorithm.supports(lj.p)) {
+            // not optimized: hash if possible, otherwise at least scan plan2
+            // once per block
+            algorithm = JoinAlgorithm.HASH.supports(lj.p) ? JoinAlgorithm.HASH
+                : JoinAlgorithm.BLOCK_NESTED_LOOP;
+        }
+
+        switch (algorithm) {
+        case NESTED_LOOP:
+            j = new Join(p,plan1,plan2);
+            break;
+        case HASH:
+            j = new HashEquiJoin(p,plan1,plan2);
+            break;
+        case SORT_MERGE:
+            j = new SortMergeJoin(p,plan1,plan2);
+            break;
+        case PARALLEL_HASH:
+            j = new ParallelHashJoin(p,plan1,plan2);
+            break;
+        default:
+            j = new BlockNestedLoopJoin(p,plan1,plan2);
+            break;
+        }
 
         return j;
 
@@ -112,6 +136,180 @@ public class JoinOptimizer {
         }
     }
 
+    /**
+     * Estimate the cost of evaluating a join of two base tables with the
+     * specified algorithm, in the same units as
+     * {@link #estimateJoinCost(LogicalJoinNode, int, int, double, double)},
+     * which is the cost of {@link JoinAlgorithm#NESTED_LOOP}. The inputs are
+     * assumed to have the tuples of the tables j joins.
+     *
+     * @return the estimated cost, or Double.POSITIVE_INFINITY if the algorithm
+     *         cannot evaluate the join
+     * @see #estimateJoinCost(JoinAlgorithm, LogicalJoinNode, int, int, double, double, int, int)
+     */
+    public double estimateJoinCost(JoinAlgorithm algorithm, LogicalJoinNode j,
+            int card1, int card2, double cost1, double cost2) {
+        return estimateJoinCost(algorithm, j, card1, card2, cost1, cost2,
+                tupleWidth(j.t1Alias), tupleWidth(j.t2Alias));
+    }
+
+    /**
+     * Estimate the cost of evaluating a join with the specified algorithm, in
+     * the same units as {@link #estimateJoinCost(LogicalJoinNode, int, int, double, double)},
+     * which is the cost of {@link JoinAlgorithm#NESTED_LOOP}. Subqueries are
+     * only evaluated with nested loops.
+     * <p>
+     * Whether an input fits in the memory of an algorithm is judged by its
+     * estimated size, its cardinality times the width of its tuples. Its cost
+     * is no measure of its size once it is itself a join, as that cost
+     * includes the CPU cost of the join.
+     *
+     * @param width1
+     *            Size in bytes of a tuple of the left-hand side
+     * @param width2
+     *            Size in bytes of a tuple of the right-hand side
+     * @return the estimated cost, or Double.POSITIVE_INFINITY if the algorithm
+     *         cannot evaluate the join
+     */
+    public double estimateJoinCost(JoinAlgorithm algorithm, LogicalJoinNode j,
+            int card1, int card2, double cost1, double cost2, int width1, int width2) {
+        if (algorithm == JoinAlgorithm.NESTED_LOOP)
+            return estimateJoinCost(j, card1, card2, cost1, cost2);
+        if (j instanceof LogicalSubplanJoinNode || !algorithm.supports(j.p))
+            return Double.POSITIVE_INFINITY;
+        double bytes1 = (double) card1 * width1;
+        double bytes2 = (double) card2 * width2;
+        switch (algorithm) {
+        case BLOCK_NESTED_LOOP:
+            return estimateBlockNestedLoopJoinCost(j, card1, card2, cost1, cost2, bytes1);
+        case HASH:
+            return estimateHashJoinCost(j, card1, card2, cost1, cost2, bytes1);
+        case SORT_MERGE:
+            return estimateSortMergeJoinCost(j, card1, card2, cost1, cost2, bytes1, bytes2);
+        case PARALLEL_HASH:
+            return estimateParallelHashJoinCost(j, card1, card2, cost1, cost2, bytes1, bytes2);
+        default:
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Estimate the cost of evaluating a join with a {@link BlockNestedLoopJoin}:
+     * the inner input is scanned once per block of outer tuples rather than
+     * once per outer tuple.
+     *
+     * @param bytes1 estimated size in bytes of the outer input
+     * @see #estimateJoinCost(JoinAlgorithm, LogicalJoinNode, int, int, double, double, int, int)
+     */
+    public double estimateBlockNestedLoopJoinCost(LogicalJoinNode j, int card1,
+            int card2, double cost1, double cost2, double bytes1) {
+        double blocks = Math.ceil(bytes1 / BlockNestedLoopJoin.DEFAULT_MEMORY_BUDGET);
+        return cost1 + Math.max(blocks, 1) * cost2 + (double) card1 * card2;
+    }
+
+    /**
+     * Estimate the cost of evaluating an equality join with a
+     * {@link HashEquiJoin}: both inputs are read once and every tuple is
+     * hashed once. If the outer input does not fit in the hash table, both
+     * inputs are also written to partitions and read back, which triples
+     * their I/O.
+     *
+     * @param bytes1 estimated size in bytes of the outer input
+     * @see #estimateJoinCost(JoinAlgorithm, LogicalJoinNode, int, int, double, double, int, int)
+     */
+    public double estimateHashJoinCost(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2, double bytes1) {
+        double cost = cost1 + cost2 + card1 + card2;
+        if (bytes1 > HashEquiJoin.DEFAULT_MEMORY_BUDGET)
+            cost += 2 * (cost1 + cost2);
+        return cost;
+    }
+
+    /**
+     * Estimate the cost of evaluating an equality join with a
+     * {@link ParallelHashJoin}: both inputs are read once, and the hashing is
+     * shared by one worker per processor. Only considered on machines with
+     * more than one processor and for inputs that fit in the join's memory.
+     *
+     * @param bytes1 estimated size in bytes of the outer input
+     * @param bytes2 estimated size in bytes of the inner input
+     * @see #estimateJoinCost(JoinAlgorithm, LogicalJoinNode, int, int, double, double, int, int)
+     */
+    public double estimateParallelHashJoinCost(LogicalJoinNode j, int card1,
+            int card2, double cost1, double cost2, double bytes1, double bytes2) {
+        int workers = Runtime.getRuntime().availableProcessors();
+        if (workers < 2 || bytes1 + bytes2 > ParallelHashJoin.DEFAULT_MEMORY_BUDGET)
+            return Double.POSITIVE_INFINITY;
+        return cost1 + cost2 + ((double) card1 + card2) / workers;
+    }
+
+    /**
+     * Estimate the cost of evaluating a join with a {@link SortMergeJoin}, in
+     * the same units as {@link #estimateJoinCost}.
+     * <p>
+     * An equality join sorts both inputs and reads each once more while
+     * merging. A range join sorts only the inner input; each outer tuple then
+     * reads the inner tuples it matches, assumed to be half of them on
+     * average.
+     *
+     * @param bytes1 estimated size in bytes of the outer input
+     * @param bytes2 estimated size in bytes of the inner input
+     * @return the estimated cost, or Double.POSITIVE_INFINITY if the join
+     *         cannot be evaluated by sorting
+     * @see #estimateJoinCost
+     */
+    public double estimateSortMergeJoinCost(LogicalJoinNode j, int card1,
+            int card2, double cost1, double cost2, double bytes1, double bytes2) {
+        if (j instanceof LogicalSubplanJoinNode || !SortMergeJoin.supports(j.p))
+            return Double.POSITIVE_INFINITY;
+        if (j.p == Predicate.Op.EQUALS) {
+            return cost1 + cost2 + estimateSortCost(card1, cost1, bytes1)
+                + estimateSortCost(card2, cost2, bytes2) + card1 + card2;
+        }
+        return cost1 + cost2 + estimateSortCost(card2, cost2, bytes2)
+            + card1 + (double) card1 * card2 / 2;
+    }
+
+    /**
+     * Estimate the cost of an {@link ExternalSort} of card tuples whose scan
+     * costs cost and which take bytes bytes: n log n comparisons, plus
+     * writing and reading every tuple once more if the input does not fit in
+     * the sort's memory.
+     */
+    private static double estimateSortCost(int card, double cost, double bytes) {
+        double sortCost = card * (Math.log(Math.max(card, 2)) / Math.log(2));
+        if (bytes > ExternalSort.DEFAULT_MEMORY_BUDGET)
+            sortCost += 2 * cost;
+        return sortCost;
+    }
+
+    /**
+     * @return the size in bytes of a tuple of the table with the specified
+     *         alias, or 0 if tableAlias is null
+     */
+    private int tupleWidth(String tableAlias) {
+        if (tableAlias == null)
+            return 0;
+        return Database.getCatalog().getTupleDesc(p.getTableId(tableAlias)).getSize();
+    }
+
+    /**
+     * @return the size in bytes of a tuple produced by the joins in
+     *         joinlist, the sum of the widths of the tables they join
+     */
+    private int tupleWidth(Vector<LogicalJoinNode> joinlist) {
+        HashSet<String> aliases = new HashSet<String>();
+        for (LogicalJoinNode j : joinlist) {
+            aliases.add(j.t1Alias);
+            if (j.t2Alias != null)
+                aliases.add(j.t2Alias);
+        }
+        int width = 0;
+        for (String alias : aliases)
+            width += tupleWidth(alias);
+        return width;
+    }
+
     /**
      * Estimate the cardinality of a join. The cardinality of a join is the
      * number of tuples produced by the join.
@@ -248,6 +446,7 @@ public class JoinOptimizer {
     			Vector<LogicalJoinNode> bestPlan = new Vector<LogicalJoinNode>();
         		double bestPlanCost = Double.MAX_VALUE;
         		int bestCard = -1;
+        		JoinAlgorithm bestAlgorithm = null;
         		for(LogicalJoinNode sPrime : s){
         			CostCard newPlan = computeCostAndCardOfSubplan(stats, filterSelectivities, 
         															sPrime, s, bestPlanCost, cache);
@@ -255,9 +454,10 @@ public class JoinOptimizer {
         				bestPlanCost = newPlan.cost;
         				bestPlan = newPlan.plan;
         				bestCard = newPlan.card;
+        				bestAlgorithm = newPlan.algorithm;
         			}
         		}
-        		cache.addPlan(s, bestPlanCost, bestCard, bestPlan);
+        		cache.addPlan(s, bestPlanCost, bestCard, bestPlan, bestAlgorithm);
     		}
     		
     	}
@@ -333,6 +533,7 @@ public class JoinOptimizer {
 
         double t1cost, t2cost;
         int t1card, t2card;
+        int t1width, t2width;
         boolean leftPkey, rightPkey;
 
         if (news.isEmpty()) { // base case -- both are base relations
@@ -341,6 +542,7 @@ public class JoinOptimizer {
             t1card = stats.get(table1Name).estimateTableCardinality(
                     filterSelectivities.get(j.t1Alias));
             leftPkey = isPkey(j.t1Alias, j.f1PureName);
+            t1width = tupleWidth(j.t1Alias);
 
             t2cost = table2Alias == null ? 0 : stats.get(table2Name)
                     .estimateScanCost();
@@ -349,6 +551,7 @@ public class JoinOptimizer {
                             filterSelectivities.get(j.t2Alias));
             rightPkey = table2Alias == null ? false : isPkey(table2Alias,
                     j.f2PureName);
+            t2width = tupleWidth(table2Alias);
         } else {
             // news is not empty -- figure best way to join j to news
             prevBest = pc.getOrder(news);
@@ -369,6 +572,7 @@ public class JoinOptimizer {
                 // subtree is
                 t1card = bestCard;
                 leftPkey = hasPkey(prevBest);
+                t1width = tupleWidth(prevBest);
 
                 t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
                         .estimateScanCost();
@@ -377,6 +581,7 @@ public class JoinOptimizer {
                                 filterSelectivities.get(j.t2Alias));
                 rightPkey = j.t2Alias == null ? false : isPkey(j.t2Alias,
                         j.f2PureName);
+                t2width = tupleWidth(j.t2Alias);
             } else if (doesJoin(prevBest, j.t2Alias)) { // j.t2 is in prevbest
                                                         // (both
                 // shouldn't be)
@@ -385,11 +590,13 @@ public class JoinOptimizer {
                 // subtree is
                 t2card = bestCard;
                 rightPkey = hasPkey(prevBest);
+                t2width = tupleWidth(prevBest);
 
                 t1cost = stats.get(table1Name).estimateScanCost();
                 t1card = stats.get(table1Name).estimateTableCardinality(
                         filterSelectivities.get(j.t1Alias));
                 leftPkey = isPkey(j.t1Alias, j.f1PureName);
+                t1width = tupleWidth(j.t1Alias);
 
             } else {
                 // don't consider this plan if one of j.t1 or j.t2
@@ -399,14 +606,21 @@ public class JoinOptimizer {
         }
 
         // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
+        JoinAlgorithm algorithm1 = cheapestAlgorithm(j, t1card, t2card, t1cost, t2cost,
+                t1width, t2width);
+        double cost1 = estimateJoinCost(algorithm1, j, t1card, t2card, t1cost, t2cost,
+                t1width, t2width);
 
         LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
+        JoinAlgorithm algorithm2 = cheapestAlgorithm(j2, t2card, t1card, t2cost, t1cost,
+                t2width, t1width);
+        double cost2 = estimateJoinCost(algorithm2, j2, t2card, t1card, t2cost, t1cost,
+                t2width, t1width);
         if (cost2 < cost1) {
             boolean tmp;
             j = j2;
             cost1 = cost2;
+            algorithm1 = algorithm2;
             tmp = rightPkey;
             rightPkey = leftPkey;
             leftPkey = tmp;
@@ -419,11 +633,30 @@ public class JoinOptimizer {
         cc.card = estimateJoinCardinality(j, t1card, t2card, leftPkey,
                 rightPkey, stats);
         cc.cost = cost1;
+        cc.algorithm = algorithm1;
         cc.plan = (Vector<LogicalJoinNode>) prevBest.clone();
+        j = j.withAlgorithm(algorithm1);
         cc.plan.addElement(j); // prevbest is left -- add new join to end
         return cc;
     }
 
+    /**
+     * @return the algorithm with the lowest estimated cost for the join j
+     */
+    private JoinAlgorithm cheapestAlgorithm(LogicalJoinNode j, int card1,
+            int card2, double cost1, double cost2, int width1, int width2) {
+        JoinAlgorithm best = JoinAlgorithm.NESTED_LOOP;
+        double bestCost = estimateJoinCost(j, card1, card2, cost1, cost2);
+        for (JoinAlgorithm a : JoinAlgorithm.values()) {
+            double cost = estimateJoinCost(a, j, card1, card2, cost1, cost2, width1, width2);
+            if (cost < bestCost) {
+                best = a;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
     /**
      * Return true if the specified table is in the list of joins, false
      * otherwise
@@ -519,7 +752,8 @@ public class JoinOptimizer {
             // Double c = pc.getCost(pathSoFar);
             neither = true;
 
-            root = new DefaultMutableTreeNode("Join " + j + " (Cost ="
+            root = new DefaultMutableTreeNode("Join " + j + " (Algorithm = "
+                    + pc.getAlgorithm(pathSoFar) + ", Cost ="
                     + pc.getCost(pathSoFar) + ", card = "
                     + pc.getCard(pathSoFar) + ")");
             DefaultMutableTreeNode n = m.get(j.t1Alias);
@@ -0,0 +1,288 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LockManager grants page-level shared and exclusive locks to transactions
+ * for the {@link BufferPool}. Any number of transactions may share a page;
+ * an exclusive lock excludes every other transaction. A transaction that is
+ * the only holder of a shared lock may upgrade it to an exclusive one.
+ * Locks are held until the transaction releases them all at commit or abort
+ * (strict two-phase locking).
+ * <p>
+ * Every page has its own lock object, created on demand, and transactions
+ * only synchronize on the locks of the pages they touch, so requests for
+ * different pages never contend. A transaction asking again for a lock it
+ * already holds does not synchronize at all.
+ * <p>
+ * A request that cannot be granted waits until the lock is released.
+ * Deadlocks are detected when a request blocks: the lock manager keeps a
+ * wait-for graph, with an edge from each waiting transaction to every
+ * transaction holding the lock it waits for, and looks for a cycle through
+ * the new waiter. If there is one, the youngest transaction on the cycle
+ * (the one with the highest {@link TransactionId#getId}, which has usually
+ * done the least work) is chosen as the victim and its request fails with a
+ * {@link TransactionAbortedException}.
+ */
+public class LockManager {
+
+    /** The lock on one page. */
+    private static class PageLock {
+        final HashSet<TransactionId> shared = new HashSet<TransactionId>();
+        TransactionId exclusive;
+        int waiters;
+        // set once the lock has been dropped from the lock table
+        boolean removed;
+
+        boolean isFree() {
+            return exclusive == null && shared.isEmpty() && waiters == 0;
+        }
+
+        synchronized List<TransactionId> holders() {
+            ArrayList<TransactionId> h = new ArrayList<TransactionId>(shared);
+            if (exclusive != null)
+                h.add(exclusive);
+            return h;
+        }
+
+        boolean canGrant(TransactionId tid, boolean wantExclusive) {
+            if (exclusive != null)
+                return exclusive.equals(tid);
+            if (!wantExclusive)
+                return true;
+            return shared.isEmpty() || (shared.size() == 1 && shared.contains(tid));
+        }
+
+        void grant(TransactionId tid, boolean wantExclusive) {
+            if (wantExclusive) {
+                shared.remove(tid);
+                exclusive = tid;
+            } else if (exclusive == null) {
+                shared.add(tid);
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<PageId, PageLock> locks =
+        new ConcurrentHashMap<PageId, PageLock>();
+    // pages locked by each transaction; TRUE marks an exclusive lock
+    private final ConcurrentHashMap<TransactionId, ConcurrentHashMap<PageId, Boolean>> held =
+        new ConcurrentHashMap<TransactionId, ConcurrentHashMap<PageId, Boolean>>();
+    // the lock each blocked transaction waits for: the wait-for graph
+    private final ConcurrentHashMap<TransactionId, PageLock> waiting =
+        new ConcurrentHashMap<TransactionId, PageLock>();
+    // blocked transactions chosen to break a deadlock
+    private final ConcurrentHashMap<TransactionId, Boolean> victims =
+        new ConcurrentHashMap<TransactionId, Boolean>();
+
+    /**
+     * Acquire a lock on pid for tid, waiting while another transaction holds
+     * a conflicting lock.
+     *
+     * @param exclusive true for an exclusive (write) lock, false for shared
+     * @throws TransactionAbortedException if tid was chosen as the victim of
+     *         a deadlock
+     */
+    public void acquire(TransactionId tid, PageId pid, boolean exclusive)
+            throws TransactionAbortedException {
+        ConcurrentHashMap<PageId, Boolean> mine = held.get(tid);
+        if (mine != null) {
+            Boolean mode = mine.get(pid);
+            if (mode != null && (mode.booleanValue() || !exclusive))
+                return;
+        } else {
+            mine = new ConcurrentHashMap<PageId, Boolean>();
+            ConcurrentHashMap<PageId, Boolean> prev = held.putIfAbsent(tid, mine);
+            if (prev != null)
+                mine = prev;
+        }
+
+        PageLock lock;
+        while (true) {
+            lock = lockFor(pid);
+            synchronized (lock) {
+                if (lock.removed)
+                    continue;
+                if (lock.canGrant(tid, exclusive)) {
+                    lock.grant(tid, exclusive);
+                    mine.put(pid, Boolean.valueOf(exclusive || lock.exclusive == tid));
+                    return;
+                }
+                // a registered waiter keeps the lock in the lock table
+                lock.waiters++;
+                break;
+            }
+        }
+
+        waiting.put(tid, lock);
+        try {
+            detectDeadlock(tid);
+            synchronized (lock) {
+                while (!lock.canGrant(tid, exclusive)) {
+                    if (victims.containsKey(tid))
+                        throw new TransactionAbortedException();
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        throw new TransactionAbortedException();
+                    }
+                }
+                lock.grant(tid, exclusive);
+                mine.put(pid, Boolean.valueOf(exclusive || lock.exclusive == tid));
+            }
+        } finally {
+            waiting.remove(tid);
+            victims.remove(tid);
+            synchronized (lock) {
+                lock.waiters--;
+                if (lock.isFree()) {
+                    lock.removed = true;
+                    locks.remove(pid, lock);
+                }
+            }
+        }
+    }
+
+    /**
+     * Look for cycles in the wait-for graph through tid, which has just
+     * blocked, and abort the youngest transaction on each until none is
+     * left. Every cycle is closed by the last of its transactions to block,
+     * so checking the new waiter finds each deadlock as soon as it forms.
+     *
+     * @throws TransactionAbortedException if tid itself is a victim
+     */
+    private void detectDeadlock(TransactionId tid)
+            throws TransactionAbortedException {
+        while (true) {
+            List<TransactionId> cycle = findCycle(tid);
+            if (cycle == null)
+                return;
+            TransactionId victim = tid;
+            for (TransactionId t : cycle) {
+                if (t.getId() > victim.getId())
+                    victim = t;
+            }
+            if (victim == tid)
+                throw new TransactionAbortedException();
+            PageLock lock = waiting.get(victim);
+            if (lock == null) {
+                // the victim was granted its lock meanwhile; look again
+                continue;
+            }
+            victims.put(victim, Boolean.TRUE);
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the transactions on a cycle of the wait-for graph that starts
+     *         and ends at tid and avoids the victims chosen so far, or null
+     *         if there is none
+     */
+    private List<TransactionId> findCycle(TransactionId tid) {
+        HashMap<TransactionId, TransactionId> parent =
+            new HashMap<TransactionId, TransactionId>();
+        LinkedList<TransactionId> stack = new LinkedList<TransactionId>();
+        stack.push(tid);
+        parent.put(tid, null);
+        while (!stack.isEmpty()) {
+            TransactionId t = stack.pop();
+            PageLock lock = waiting.get(t);
+            if (lock == null)
+                continue;
+            for (TransactionId holder : lock.holders()) {
+                // victims are about to release their locks
+                if (holder.equals(t) || victims.containsKey(holder))
+                    continue;
+                if (holder.equals(tid)) {
+                    LinkedList<TransactionId> cycle = new LinkedList<TransactionId>();
+                    for (TransactionId c = t; c != null; c = parent.get(c))
+                        cycle.addFirst(c);
+                    return cycle;
+                }
+                if (!parent.containsKey(holder)) {
+                    parent.put(holder, t);
+                    stack.push(holder);
+                }
+            }
+        }
+        return null;
+    }
+
+    private PageLock lockFor(PageId pid) {
+        PageLock lock = locks.get(pid);
+        if (lock == null) {
+            lock = new PageLock();
+            PageLock prev = locks.putIfAbsent(pid, lock);
+            if (prev != null)
+                lock = prev;
+        }
+        return lock;
+    }
+
+    /**
+     * Release the lock tid holds on pid, if any.
+     */
+    public void release(TransactionId tid, PageId pid) {
+        ConcurrentHashMap<PageId, Boolean> mine = held.get(tid);
+        if (mine == null || mine.remove(pid) == null)
+            return;
+        PageLock lock = locks.get(pid);
+        if (lock == null)
+            return;
+        synchronized (lock) {
+            if (lock.exclusive != null && lock.exclusive.equals(tid))
+                lock.exclusive = null;
+            lock.shared.remove(tid);
+            if (lock.isFree()) {
+                lock.removed = true;
+                locks.remove(pid, lock);
+            } else {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Release every lock held by tid.
+     */
+    public void releaseAll(TransactionId tid) {
+        ConcurrentHashMap<PageId, Boolean> mine = held.get(tid);
+        if (mine == null)
+            return;
+        for (PageId pid : new ArrayList<PageId>(mine.keySet())) {
+            release(tid, pid);
+        }
+        held.remove(tid);
+        victims.remove(tid);
+    }
+
+    /**
+     * @return true if tid holds a shared or exclusive lock on pid
+     */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        ConcurrentHashMap<PageId, Boolean> mine = held.get(tid);
+        return mine != null && mine.containsKey(pid);
+    }
+
+    /**
+     * @return true if tid holds an exclusive lock on pid
+     */
+    public boolean holdsExclusiveLock(TransactionId tid, PageId pid) {
+        ConcurrentHashMap<PageId, Boolean> mine = held.get(tid);
+        return mine != null && Boolean.TRUE.equals(mine.get(pid));
+    }
+
+    /**
+     * @return the pages tid currently holds locks on
+     */
+    public Set<PageId> pagesLockedBy(TransactionId tid) {
+        ConcurrentHashMap<PageId, Boolean> mine = held.get(tid);
+        if (mine == null)
+            return Collections.emptySet();
+        return new HashSet<PageId>(mine.keySet());
+    }
+}
@@ -35,6 +35,7 @@ public class LogicalPlan {
     private String aggField;
     private boolean oByAsc, hasOrderBy = false;
     private String oByField;
+    private int limit = -1;
     private String query;
 //    private Query owner;
 
@@ -216,6 +217,21 @@ public class LogicalPlan {
         hasOrderBy = true;
     }
 
+    /** Add a LIMIT on the number of tuples the query returns.
+        @param n the maximum number of tuples
+     * @throws ParsingException if n is negative
+    */
+    public void addLimit(int n) throws ParsingException {
+        if (n < 0)
+            throw new ParsingException("LIMIT must not be negative");
+        limit = n;
+    }
+
+    /** @return the LIMIT of the query, or -1 if it has none */
+    public int getLimit() {
+        return limit;
+    }
+
     /** Given a name of a field, try to figure out what table it belongs to by looking
      *   through all of the tables added via {@link #addScan}. 
      *  @return A fully qualified name of the form tableAlias.name.  If the name parameter is already qualified
@@ -271,6 +287,21 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /**
+     * @return true if the estimated number of groups of an aggregate over
+     *         scan fits the group capacity of an {@link Aggregate}
+     */
+    private boolean groupsFit(SeqScan scan, int afield, int gfield,
+            Map<String,TableStats> statsMap) {
+        if (gfield == Aggregator.NO_GROUPING)
+            return true;
+        TableStats stats = statsMap.get(scan.getTableName());
+        if (stats == null)
+            return false;
+        int capacity = new Aggregate(scan, afield, gfield, Aggregator.Op.COUNT).getGroupCapacity();
+        return stats.estimateDistinctValues(gfield) <= capacity;
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -462,10 +493,18 @@ public class LogicalPlan {
             TupleDesc td = node.getTupleDesc();
             Aggregate aggNode;
             try {
-                aggNode = new Aggregate(node,
-                                        td.fieldNameToIndex(aggField),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField),
-                                getAggOp(aggOp));
+                int afield = td.fieldNameToIndex(aggField);
+                int gfield = groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField);
+                // input already grouped needs no hashing; a bare table scan
+                // can be split between threads by pages if every worker can
+                // hold all its groups, since ParallelAggregate does not spill
+                if (gfield != Aggregator.NO_GROUPING && StreamAggregate.isGroupedOn(node, gfield))
+                    aggNode = new StreamAggregate(node, afield, gfield, getAggOp(aggOp));
+                else if (node instanceof SeqScan && Runtime.getRuntime().availableProcessors() > 1
+                        && groupsFit((SeqScan) node, afield, gfield, statsMap))
+                    aggNode = new ParallelAggregate(node, afield, gfield, getAggOp(aggOp));
+                else
+                    aggNode = new Aggregate(node, afield, gfield, getAggOp(aggOp));
             } catch (NoSuchElementException e) {
                 throw new simpledb.ParsingException(e);
             } catch (IllegalArgumentException e) {
@@ -474,8 +513,13 @@ public class LogicalPlan {
             node = aggNode;
         }
 
-        if (hasOrderBy) {
+        if (hasOrderBy && limit >= 0) {
+            // keep only the best tuples rather than sorting them all
+            node = new TopK(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, limit, node);
+        } else if (hasOrderBy) {
             node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+        } else if (limit >= 0) {
+            node = new Limit(limit, node);
         }
 
         return new Project(outFields, outTypes, node);
@@ -38,4 +38,12 @@ public class LogicalSubplanJoinNode extends LogicalJoinNode {
         return j2;
     }
 
+    /** Return a copy of this node, with the same subplan, that is evaluated
+     * with the specified algorithm. */
+    @Override public LogicalSubplanJoinNode withAlgorithm(JoinAlgorithm algorithm) {
+        LogicalSubplanJoinNode j2 = new LogicalSubplanJoinNode(t1Alias,f1PureName,subPlan, p);
+        j2.algorithm = algorithm;
+        return j2;
+    }
+
 }
@@ -0,0 +1,96 @@
+package simpledb;
+
+import java.util.Comparator;
+
+/**
+ * LoserTree merges sorted sources of tuples, such as the runs of an
+ * {@link ExternalSort}, into one sorted stream. It is a tournament tree: each
+ * internal node remembers the source that lost the match played there, and
+ * the overall winner is kept at the root. Taking the smallest tuple replays
+ * only the matches on the path from its source to the root, one comparison
+ * per level, which is about half the comparisons of a binary heap.
+ * <p>
+ * Equal tuples are returned in the order of their sources, so merging the
+ * runs of a stable sort in order keeps it stable.
+ */
+final class LoserTree {
+
+    private final Comparator<Tuple> comparator;
+    private final DbIterator[] sources;
+    // the next tuple of each source, or null once it is exhausted
+    private final Tuple[] heads;
+    // tree[0] is the winner; tree[1 .. k-1] the loser at each internal node.
+    // The children of node n are 2n and 2n + 1; leaf k + i is source i.
+    private final int[] tree;
+
+    /**
+     * Create a tree over open sources and read the first tuple of each.
+     *
+     * @param comparator the order each source is sorted in
+     * @param sources the sources to merge, opened
+     */
+    LoserTree(Comparator<Tuple> comparator, DbIterator[] sources)
+            throws DbException, TransactionAbortedException {
+        this.comparator = comparator;
+        this.sources = sources;
+        int k = sources.length;
+        heads = new Tuple[k];
+        for (int i = 0; i < k; i++)
+            heads[i] = sources[i].hasNext() ? sources[i].next() : null;
+        tree = new int[Math.max(1, k)];
+        if (k > 0)
+            tree[0] = build(1);
+    }
+
+    /** @return the winner of the subtree at node, recording its losers */
+    private int build(int node) {
+        int k = sources.length;
+        if (node >= k)
+            return node - k;
+        int left = build(2 * node);
+        int right = build(2 * node + 1);
+        if (beats(left, right)) {
+            tree[node] = right;
+            return left;
+        }
+        tree[node] = left;
+        return right;
+    }
+
+    /**
+     * @return true if the head of source a comes before the head of source b;
+     *         exhausted sources lose to every other
+     */
+    private boolean beats(int a, int b) {
+        if (heads[b] == null)
+            return true;
+        if (heads[a] == null)
+            return false;
+        int c = comparator.compare(heads[a], heads[b]);
+        return c < 0 || (c == 0 && a < b);
+    }
+
+    /**
+     * @return the smallest remaining tuple of all sources, or null if they
+     *         are all exhausted
+     */
+    Tuple next() throws DbException, TransactionAbortedException {
+        int k = sources.length;
+        if (k == 0)
+            return null;
+        int winner = tree[0];
+        Tuple t = heads[winner];
+        if (t == null)
+            return null;
+        heads[winner] = sources[winner].hasNext() ? sources[winner].next() : null;
+        for (int node = (winner + k) / 2; node > 0; node /= 2) {
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+        return t;
+    }
+}
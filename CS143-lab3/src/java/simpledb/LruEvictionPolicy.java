@@ -0,0 +1,40 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least-recently-used eviction: the victim is the eligible page whose last
+ * access lies furthest in the past. Every hit moves the page to the tail of an
+ * access-ordered list, so hits take this policy's monitor.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    // access-ordered: iteration starts at the least recently used page
+    private final LinkedHashMap<PageId, Boolean> pages =
+        new LinkedHashMap<PageId, Boolean>(16, 0.75f, true);
+
+    public synchronized void pageAdded(PageId pid) {
+        pages.put(pid, Boolean.TRUE);
+    }
+
+    public synchronized void pageAccessed(PageId pid) {
+        // get() on an access-ordered map moves the entry to the tail
+        pages.get(pid);
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        pages.remove(pid);
+    }
+
+    public synchronized PageId chooseVictim(Filter filter) {
+        Iterator<PageId> it = pages.keySet().iterator();
+        while (it.hasNext()) {
+            PageId pid = it.next();
+            if (filter.canEvict(pid)) {
+                return pid;
+            }
+        }
+        return null;
+    }
+}
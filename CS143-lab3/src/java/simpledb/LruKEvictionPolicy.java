@@ -0,0 +1,114 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU-K eviction (O'Neil, O'Neil and Weikum). The policy remembers the times
+ * of the last K references to each page and evicts the page whose K-th most
+ * recent reference is oldest. Pages referenced fewer than K times have an
+ * infinite backward K-distance and are evicted first, oldest last reference
+ * first, so a page touched once by a scan does not displace a page that is
+ * used over and over.
+ * <p>
+ * Reference history outlives residency for a bounded number of pages, so a
+ * page that is evicted and read back in soon afterwards keeps its standing.
+ */
+public class LruKEvictionPolicy implements EvictionPolicy {
+
+    /** Default number of references remembered per page. */
+    public static final int DEFAULT_K = 2;
+
+    /** Number of evicted pages whose history is retained. */
+    private static final int RETAINED_HISTORY = 1024;
+
+    private static class History {
+        // history[0] is the most recent reference
+        final long[] refs;
+        int count;
+
+        History(int k) {
+            refs = new long[k];
+        }
+
+        void reference(long time) {
+            System.arraycopy(refs, 0, refs, 1, refs.length - 1);
+            refs[0] = time;
+            if (count < refs.length)
+                count++;
+        }
+    }
+
+    private final int k;
+    private long clock = 0;
+    private final HashMap<PageId, History> resident = new HashMap<PageId, History>();
+    private final LinkedHashMap<PageId, History> retained =
+        new LinkedHashMap<PageId, History>(16, 0.75f, false) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<PageId, History> eldest) {
+                return size() > RETAINED_HISTORY;
+            }
+        };
+
+    public LruKEvictionPolicy() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k the number of references remembered for each page; must be
+     *          at least 1 (LRU-1 is plain LRU)
+     */
+    public LruKEvictionPolicy(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1");
+        this.k = k;
+    }
+
+    public synchronized void pageAdded(PageId pid) {
+        History h = retained.remove(pid);
+        if (h == null)
+            h = resident.get(pid);
+        if (h == null)
+            h = new History(k);
+        h.reference(++clock);
+        resident.put(pid, h);
+    }
+
+    public synchronized void pageAccessed(PageId pid) {
+        History h = resident.get(pid);
+        if (h != null)
+            h.reference(++clock);
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        History h = resident.remove(pid);
+        if (h != null)
+            retained.put(pid, h);
+    }
+
+    public synchronized PageId chooseVictim(Filter filter) {
+        PageId victim = null;
+        boolean victimInfinite = false;
+        long victimTime = Long.MAX_VALUE;
+        for (Map.Entry<PageId, History> e : resident.entrySet()) {
+            History h = e.getValue();
+            boolean infinite = h.count < k;
+            // infinite distance: order by last reference, else by K-th reference
+            long time = infinite ? h.refs[0] : h.refs[k - 1];
+            if (victim != null) {
+                if (victimInfinite && !infinite)
+                    continue;
+                if (victimInfinite == infinite && time >= victimTime)
+                    continue;
+            }
+            if (!filter.canEvict(e.getKey()))
+                continue;
+            victim = e.getKey();
+            victimInfinite = infinite;
+            victimTime = time;
+        }
+        return victim;
+    }
+}
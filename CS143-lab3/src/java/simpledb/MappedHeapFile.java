@@ -0,0 +1,99 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * MappedHeapFile is a HeapFile whose pages are read through memory-mapped
+ * segments of the table file instead of explicit reads, so a buffer pool
+ * miss costs no system call. Each page is copied out of the mapped region
+ * into a buffer of its own: the tuples of a HeapPage may be lazy views of its
+ * bytes, and the mapping is shared with the file, so views of the mapping
+ * itself would change under their readers when {@link HeapFile#writePage}
+ * writes the page back. Pages written that way are visible to later reads.
+ * <p>
+ * Mapping suits large, read-mostly tables. Tables are mapped rather than
+ * stored on the heap path by adding the <code>mapped</code> annotation to
+ * their entry in the catalog file.
+ *
+ * @see Catalog#loadSchema
+ */
+public class MappedHeapFile extends HeapFile {
+
+    /** Number of pages covered by one mapped segment. */
+    public static final int SEGMENT_PAGES = 1024;
+
+    // segments.get(i) maps pages [i*SEGMENT_PAGES, (i+1)*SEGMENT_PAGES) as far
+    // as they existed when it was mapped; guarded by this
+    private final ArrayList<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * Constructs a mapped heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     */
+    public MappedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        int pageNo = pid.pageNumber();
+        try {
+            ByteBuffer segment = segmentFor(pageNo);
+            if (segment == null) {
+                // past the end of the file: an empty page, as in HeapFile
+                return super.readPage(pid);
+            }
+            ByteBuffer page = segment.duplicate();
+            page.position((pageNo % SEGMENT_PAGES) * BufferPool.PAGE_SIZE);
+            byte[] data = new byte[BufferPool.PAGE_SIZE];
+            page.get(data);
+            return new HeapPage(new HeapPageId(pid.getTableId(), pageNo), data);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the segment holding page pageNo, mapping or remapping it if it
+     * does not cover the page yet, or null if the page lies past the end of
+     * the file.
+     */
+    private synchronized MappedByteBuffer segmentFor(int pageNo) throws IOException {
+        int index = pageNo / SEGMENT_PAGES;
+        int offset = (pageNo % SEGMENT_PAGES) * BufferPool.PAGE_SIZE;
+        MappedByteBuffer segment = index < segments.size() ? segments.get(index) : null;
+        if (segment != null && segment.capacity() >= offset + BufferPool.PAGE_SIZE)
+            return segment;
+
+        // the file has grown since this segment was mapped, or it never was
+        FileChannel fc = getChannel();
+        long start = (long)index * SEGMENT_PAGES * BufferPool.PAGE_SIZE;
+        long available = (fc.size() - start) / BufferPool.PAGE_SIZE * BufferPool.PAGE_SIZE;
+        if (available < offset + BufferPool.PAGE_SIZE)
+            return null;
+        long length = Math.min(available, (long)SEGMENT_PAGES * BufferPool.PAGE_SIZE);
+        segment = fc.map(FileChannel.MapMode.READ_ONLY, start, length);
+        while (segments.size() <= index)
+            segments.add(null);
+        segments.set(index, segment);
+        return segment;
+    }
+
+    /**
+     * Drops the mapped segments and closes the underlying file. The file is
+     * mapped again if it is used afterwards.
+     */
+    public synchronized void close() throws IOException {
+        segments.clear();
+        super.close();
+    }
+
+}
@@ -32,24 +32,39 @@ public class OperatorCardinality {
         } else if (o instanceof Aggregate) {
             return updateAggregateCardinality((Aggregate) o, tableAliasToId,
                     tableStats);
+        } else if (o instanceof Limit || o instanceof TopK) {
+            int limit = o instanceof Limit ? ((Limit) o).getLimit() : ((TopK) o).getLimit();
+            boolean hasJoinPK = updateChildCardinality(o, tableAliasToId, tableStats);
+            o.setEstimatedCardinality(Math.min(limit, o.getEstimatedCardinality()));
+            return hasJoinPK;
         } else {
-            DbIterator[] children = o.getChildren();
-            int childC = 1;
-            boolean hasJoinPK = false;
-            if (children.length > 0 && children[0] != null) {
-                if (children[0] instanceof Operator) {
-                    hasJoinPK = updateOperatorCardinality(
-                            (Operator) children[0], tableAliasToId, tableStats);
-                    childC = ((Operator) children[0]).getEstimatedCardinality();
-                } else if (children[0] instanceof SeqScan) {
-                    childC = tableStats.get(
-                            ((SeqScan) children[0]).getTableName())
-                            .estimateTableCardinality(1.0);
-                }
+            return updateChildCardinality(o, tableAliasToId, tableStats);
+        }
+    }
+
+    /**
+     * Give an operator that does not change the number of tuples the
+     * cardinality of its first child.
+     */
+    private static boolean updateChildCardinality(Operator o,
+            Map<String, Integer> tableAliasToId,
+            Map<String, TableStats> tableStats) {
+        DbIterator[] children = o.getChildren();
+        int childC = 1;
+        boolean hasJoinPK = false;
+        if (children.length > 0 && children[0] != null) {
+            if (children[0] instanceof Operator) {
+                hasJoinPK = updateOperatorCardinality(
+                        (Operator) children[0], tableAliasToId, tableStats);
+                childC = ((Operator) children[0]).getEstimatedCardinality();
+            } else if (children[0] instanceof SeqScan) {
+                childC = tableStats.get(
+                        ((SeqScan) children[0]).getTableName())
+                        .estimateTableCardinality(1.0);
             }
-            o.setEstimatedCardinality(childC);
-            return hasJoinPK;
         }
+        o.setEstimatedCardinality(childC);
+        return hasJoinPK;
     }
 
     private static boolean updateFilterCardinality(Filter f,
@@ -3,18 +3,23 @@ package simpledb;
 import java.util.*;
 
 /**
- * OrderBy is an operator that implements a relational ORDER BY.
+ * OrderBy is an operator that implements a relational ORDER BY. The tuples
+ * are sorted by an {@link ExternalSort}, so an input larger than the memory
+ * budget is sorted in runs on disk, and the tuples are returned while the
+ * runs are merged.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
     private DbIterator child;
     private TupleDesc td;
-    private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
     private int orderByField;
     private String orderByFieldName;
-    private Iterator<Tuple> it;
     private boolean asc;
+    private final TupleComparator order;
+    private final int memoryBudget;
+    private final int parallelism;
+    private transient ExternalSort sort;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -27,11 +32,56 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, DbIterator child) {
+        this(orderbyField, asc, child, ExternalSort.DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Creates a new OrderBy node with a memory budget for the sort.
+     *
+     * @param memoryBudget
+     *            bytes of tuples to hold in memory at once
+     * @see #OrderBy(int, boolean, DbIterator)
+     */
+    public OrderBy(int orderbyField, boolean asc, DbIterator child, int memoryBudget) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, child, memoryBudget);
+    }
+
+    /**
+     * Creates a new OrderBy node on several sort keys.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if its order is ascending.
+     * @param child
+     *            the tuples to sort.
+     * @param memoryBudget
+     *            bytes of tuples to hold in memory at once
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child, int memoryBudget) {
+        this(orderbyFields, asc, child, memoryBudget,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new OrderBy node on several sort keys that sorts the tuples
+     * held in memory on a number of threads.
+     *
+     * @param parallelism
+     *            the number of threads to sort on
+     * @see #OrderBy(int[], boolean[], DbIterator, int)
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child, int memoryBudget,
+            int parallelism) {
         this.child = child;
+        this.memoryBudget = memoryBudget;
+        this.parallelism = Math.max(1, parallelism);
         td = child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.orderByFieldName = td.getFieldName(orderbyField);
-        this.asc = asc;
+        this.order = new TupleComparator(td, orderbyFields, asc);
+        this.orderByField = orderbyFields[0];
+        this.orderByFieldName = td.getFieldName(orderByField);
+        this.asc = asc[0];
     }
     
     public boolean isASC()
@@ -44,33 +94,51 @@ public class OrderBy extends Operator {
         return this.orderByField;
     }
     
+    /** @return the order of the sort, on all its keys */
+    public TupleComparator getComparator()
+    {
+        return this.order;
+    }
+    
     public String getOrderFieldName()
     {
 	return this.orderByFieldName;
     }
     
+    /** @return the number of threads the tuples are sorted on in memory */
+    public int getParallelism() {
+        return parallelism;
+    }
+
     public TupleDesc getTupleDesc() {
         return td;
     }
 
+    /**
+     * @return the number of runs the last open spilled to disk, or 0 if the
+     *         child was sorted in memory
+     */
+    public int getRunCount() {
+        return sort == null ? 0 : sort.getRunCount();
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
-        child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        if (sort != null)
+            sort.close();
+        sort = new ExternalSort(order, child, memoryBudget, parallelism);
+        sort.open();
         super.open();
     }
 
     public void close() {
         super.close();
-        it = null;
+        if (sort != null)
+            sort.close();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        sort.rewind();
     }
 
     /**
@@ -82,8 +150,8 @@ public class OrderBy extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
-        if (it != null && it.hasNext()) {
-            return it.next();
+        if (sort != null && sort.hasNext()) {
+            return sort.next();
         } else
             return null;
     }
@@ -99,25 +167,3 @@ public class OrderBy extends Operator {
     }
 
 }
-
-class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
-
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
-    }
-
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
-    }
-    
-}
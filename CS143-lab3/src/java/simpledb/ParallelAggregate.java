@@ -0,0 +1,147 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ParallelAggregate computes the same aggregate as {@link Aggregate}, in two
+ * phases, when its child is a {@link SeqScan} of a {@link HeapFile}. In the
+ * first phase each worker thread scans its own range of the pages of the file
+ * and merges the tuples into a partial aggregator of its own. In the second,
+ * the partial aggregators are merged group by group into the final one,
+ * which {@link Accumulator#merge} makes possible for every aggregate op since
+ * the groups keep their count, sum, minimum and maximum rather than a result.
+ * <p>
+ * Every worker holds all of the groups it sees, so the groups are not spilled
+ * to disk as they are by Aggregate. If a worker, or the merged aggregate,
+ * has more groups than {@link #getGroupCapacity}, the partial aggregates are
+ * dropped and the child is aggregated by Aggregate, which spills. Over any
+ * other child, or with a single worker, this operator is an Aggregate.
+ */
+public class ParallelAggregate extends Aggregate {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int parallelism;
+
+    /**
+     * Constructor. Uses one worker per available processor.
+     *
+     * @see Aggregate#Aggregate(DbIterator, int, int, Aggregator.Op)
+     */
+    public ParallelAggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop) {
+        this(child, afield, gfield, aop, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism
+     *            Number of worker threads
+     * @see Aggregate#Aggregate(DbIterator, int, int, Aggregator.Op)
+     */
+    public ParallelAggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop,
+            int parallelism) {
+        this(child, afield, gfield, aop, parallelism, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructor with a memory budget for the groups of each worker.
+     *
+     * @param parallelism
+     *            Number of worker threads
+     * @see Aggregate#Aggregate(DbIterator, int, int, Aggregator.Op, int)
+     */
+    public ParallelAggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop,
+            int parallelism, int memoryBudget) {
+        super(child, afield, gfield, aop, memoryBudget);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /** @return the number of worker threads */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    Aggregator aggregate() throws DbException, TransactionAbortedException {
+        DbIterator child = getChildren()[0];
+        if (!(child instanceof SeqScan))
+            return super.aggregate();
+        SeqScan scan = (SeqScan) child;
+        DbFile f = Database.getCatalog().getDatabaseFile(scan.getTableId());
+        if (!(f instanceof HeapFile))
+            return super.aggregate();
+        final HeapFile file = (HeapFile) f;
+        final TransactionId tid = scan.getTransactionId();
+        final int pages = file.numPages();
+        final int workers = Math.min(parallelism, pages);
+        if (workers < 2)
+            return super.aggregate();
+
+        final int capacity = getGroupCapacity();
+        // set by the first worker to hold more groups than fit
+        final AtomicBoolean overflow = new AtomicBoolean();
+        final Aggregator[] partials = new Aggregator[workers];
+        final Exception[] failures = new Exception[workers];
+        final ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for (int w = 0; w < workers; w++) {
+            final int worker = w;
+            tasks.add(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                protected void compute() {
+                    Aggregator partial = newAggregator();
+                    DbFileIterator it = file.iterator(tid,
+                            (int) ((long) worker * pages / workers),
+                            (int) ((long) (worker + 1) * pages / workers));
+                    try {
+                        it.open();
+                        while (!overflow.get() && it.hasNext()) {
+                            partial.mergeTupleIntoGroup(it.next());
+                            if (partial.getGroupCount() > capacity)
+                                overflow.set(true);
+                        }
+                        partials[worker] = partial;
+                    } catch (Exception e) {
+                        failures[worker] = e;
+                    } finally {
+                        it.close();
+                    }
+                }
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (RuntimeException e) {
+            throw new DbException("parallel aggregation failed: " + e);
+        } finally {
+            pool.shutdown();
+        }
+        for (Exception e : failures) {
+            if (e instanceof TransactionAbortedException)
+                throw (TransactionAbortedException) e;
+            if (e instanceof DbException)
+                throw (DbException) e;
+            if (e != null)
+                throw new DbException("parallel aggregation failed: " + e);
+        }
+
+        if (overflow.get())
+            return super.aggregate();
+        Aggregator groups = partials[0];
+        for (int w = 1; w < workers; w++)
+            groups.merge(partials[w]);
+        if (groups.getGroupCount() > capacity)
+            return super.aggregate();
+        return groups;
+    }
+}
@@ -0,0 +1,445 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ParallelHashJoin evaluates an equality join like {@link HashEquiJoin}, but
+ * spreads the hashing over a pool of worker threads. Both children are read
+ * into memory on the calling thread, since DbIterators are not thread-safe.
+ * The workers then radix-partition the tuples on the hash of their join
+ * field, each worker taking a chunk of the input. Each partition is joined
+ * independently: the worker builds a hash table on its left tuples and probes
+ * it with its right tuples. Joined tuples are handed to {@link #fetchNext} in
+ * batches through a bounded queue, so the workers run ahead of the consumer
+ * by at most {@link #QUEUE_BATCHES} batches.
+ * <p>
+ * Both inputs must fit in memory; the optimizer only picks this join when
+ * they are estimated to fit in {@link #DEFAULT_MEMORY_BUDGET}. If they turn
+ * out not to fit in the join's memory budget after all, the join is handed
+ * to a {@link HashEquiJoin}, which spills, on the calling thread. Tuples
+ * come out in no particular order.
+ */
+public class ParallelHashJoin extends Join {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Combined size of the inputs the optimizer lets this join hold, in bytes. */
+    public static final int DEFAULT_MEMORY_BUDGET = 4096 * BufferPool.PAGE_SIZE;
+
+    /** Partitions per worker, so that uneven partitions still balance out. */
+    static final int PARTITIONS_PER_WORKER = 4;
+
+    /** Joined tuples handed over to the consumer at a time. */
+    static final int BATCH_SIZE = 1024;
+
+    /** Capacity of the result queue, in batches. */
+    static final int QUEUE_BATCHES = 64;
+
+    /** Tuples partitioned by one task. */
+    static final int CHUNK_SIZE = 16384;
+
+    // marks the end of the results
+    private static final ArrayList<Tuple> END = new ArrayList<Tuple>();
+
+    private final int parallelism;
+    private final int memoryBudget;
+
+    private transient TupleDesc td;
+    // true if both join fields are INT_TYPE
+    private transient boolean intKeys;
+    private transient ForkJoinPool pool;
+    // partitions[c][p] is the list of tuples of partition p in chunk c
+    private transient ArrayList<Tuple>[][] leftChunks, rightChunks;
+    private transient int partitionCount;
+    private transient BlockingQueue<ArrayList<Tuple>> results;
+    private transient volatile boolean cancelled;
+    private transient volatile Throwable failure;
+    private transient ArrayList<Tuple> batch;
+    private transient int batchPos;
+    // the join the inputs are handed to when they do not fit, or null
+    private transient HashEquiJoin fallback;
+
+    /**
+     * Constructor. Uses one worker per available processor.
+     *
+     * @param p
+     *            The predicate to use to join the children; must be
+     *            {@link Predicate.Op#EQUALS}
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     */
+    public ParallelHashJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children; must be
+     *            {@link Predicate.Op#EQUALS}
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @param parallelism
+     *            Number of worker threads
+     * @throws IllegalArgumentException if the predicate is not an equality
+     */
+    public ParallelHashJoin(JoinPredicate p, DbIterator child1, DbIterator child2,
+            int parallelism) {
+        this(p, child1, child2, parallelism, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children; must be
+     *            {@link Predicate.Op#EQUALS}
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @param parallelism
+     *            Number of worker threads
+     * @param memoryBudget
+     *            Bytes of tuples of both inputs to hold in memory; larger
+     *            inputs are joined by a {@link HashEquiJoin}
+     * @throws IllegalArgumentException if the predicate is not an equality
+     */
+    public ParallelHashJoin(JoinPredicate p, DbIterator child1, DbIterator child2,
+            int parallelism, int memoryBudget) {
+        super(p, child1, child2);
+        if (p.getOperator() != Predicate.Op.EQUALS)
+            throw new IllegalArgumentException("hash join needs an equality, not " + p.getOperator());
+        this.parallelism = Math.max(1, parallelism);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /** @return the number of worker threads */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return true if the last open found the inputs too large for the
+     *         memory budget and handed them to a HashEquiJoin
+     */
+    public boolean isFallback() {
+        return fallback != null;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        super.open();
+        DbIterator[] children = getChildren();
+        JoinPredicate pred = getJoinPredicate();
+        td = getTupleDesc();
+        intKeys = children[0].getTupleDesc().getFieldType(pred.getField1()) == Type.INT_TYPE
+            && children[1].getTupleDesc().getFieldType(pred.getField2()) == Type.INT_TYPE;
+        int width1 = children[0].getTupleDesc().getSize();
+        int width2 = children[1].getTupleDesc().getSize();
+        Tuple[] left = readAll(children[0], memoryBudget / width1);
+        Tuple[] right = left == null ? null
+            : readAll(children[1], (memoryBudget - left.length * width1) / width2);
+        if (right == null) {
+            // start over with a join that spills what does not fit
+            children[0].close();
+            children[1].close();
+            fallback = new HashEquiJoin(pred, children[0], children[1]);
+            fallback.open();
+            return;
+        }
+        partitionCount = 1;
+        while (partitionCount < parallelism * PARTITIONS_PER_WORKER)
+            partitionCount <<= 1;
+        pool = new ForkJoinPool(parallelism);
+        leftChunks = partition(left, pred.getField1());
+        rightChunks = partition(right, pred.getField2());
+        start();
+    }
+
+    /**
+     * @return the tuples of child, or null if it has more than max of them
+     */
+    private static Tuple[] readAll(DbIterator child, int max) throws DbException,
+            TransactionAbortedException {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        while (child.hasNext()) {
+            if (tuples.size() == max)
+                return null;
+            Tuple t = child.next();
+            // lazy tuples decode on first use, which is not thread-safe
+            t.materialize();
+            tuples.add(t);
+        }
+        return tuples.toArray(new Tuple[tuples.size()]);
+    }
+
+    /**
+     * Split tuples into chunks and partition the chunks in parallel.
+     *
+     * @return the partitions of each chunk
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ArrayList<Tuple>[][] partition(final Tuple[] tuples, final int field)
+            throws DbException {
+        int chunks = (tuples.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final ArrayList<Tuple>[][] partitions = new ArrayList[chunks][];
+        ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for (int c = 0; c < chunks; c++) {
+            final int chunk = c;
+            tasks.add(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                protected void compute() {
+                    ArrayList<Tuple>[] parts = new ArrayList[partitionCount];
+                    for (int p = 0; p < partitionCount; p++)
+                        parts[p] = new ArrayList<Tuple>();
+                    int end = Math.min(tuples.length, (chunk + 1) * CHUNK_SIZE);
+                    for (int i = chunk * CHUNK_SIZE; i < end; i++)
+                        parts[partitionOf(tuples[i].getField(field))].add(tuples[i]);
+                    partitions[chunk] = parts;
+                }
+            });
+        }
+        final ArrayList<RecursiveAction> all = tasks;
+        try {
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                protected void compute() {
+                    invokeAll(all);
+                }
+            });
+        } catch (RuntimeException e) {
+            throw new DbException("parallel partitioning failed: " + e);
+        }
+        return partitions;
+    }
+
+    /**
+     * @return the partition of a join key; uses the high bits of the hash,
+     *         since the per-partition hash tables index by the low bits
+     */
+    private int partitionOf(Field key) {
+        int h = key.hashCode() * 0x9e3779b9;
+        return (h >>> 16) & (partitionCount - 1);
+    }
+
+    /**
+     * Start joining the partitions on the worker threads.
+     */
+    private void start() {
+        cancelled = false;
+        failure = null;
+        batch = null;
+        batchPos = 0;
+        results = new ArrayBlockingQueue<ArrayList<Tuple>>(QUEUE_BATCHES);
+        final AtomicInteger remaining = new AtomicInteger(partitionCount);
+        final BlockingQueue<ArrayList<Tuple>> queue = results;
+        for (int p = 0; p < partitionCount; p++) {
+            final int partition = p;
+            pool.execute(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                protected void compute() {
+                    try {
+                        joinPartition(partition, queue);
+                    } catch (Throwable e) {
+                        failure = e;
+                        cancelled = true;
+                    } finally {
+                        if (remaining.decrementAndGet() == 0)
+                            deliver(queue, END, true);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Build a hash table on the left tuples of a partition, probe it with the
+     * right tuples, and queue the joined tuples.
+     */
+    private void joinPartition(int partition, BlockingQueue<ArrayList<Tuple>> queue) {
+        JoinPredicate pred = getJoinPredicate();
+        int f1 = pred.getField1(), f2 = pred.getField2();
+        IntHashTable intMap = null;
+        HashMap<Field, ArrayList<Tuple>> map = null;
+        if (intKeys)
+            intMap = new IntHashTable(0);
+        else
+            map = new HashMap<Field, ArrayList<Tuple>>();
+        for (ArrayList<Tuple>[] chunk : leftChunks) {
+            for (Tuple t : chunk[partition]) {
+                Field key = t.getField(f1);
+                if (intKeys) {
+                    intMap.add(((IntField) key).getValue(), t);
+                } else {
+                    ArrayList<Tuple> list = map.get(key);
+                    if (list == null) {
+                        list = new ArrayList<Tuple>();
+                        map.put(key, list);
+                    }
+                    list.add(t);
+                }
+            }
+        }
+
+        ArrayList<Tuple> out = new ArrayList<Tuple>(BATCH_SIZE);
+        for (ArrayList<Tuple>[] chunk : rightChunks) {
+            for (Tuple t2 : chunk[partition]) {
+                if (cancelled)
+                    return;
+                Field key = t2.getField(f2);
+                if (intKeys) {
+                    for (int r = intMap.find(((IntField) key).getValue()); r >= 0; r = intMap.nextRow(r))
+                        out = emit(out, merge(intMap.row(r), t2), queue);
+                } else {
+                    ArrayList<Tuple> list = map.get(key);
+                    if (list != null) {
+                        for (Tuple t1 : list)
+                            out = emit(out, merge(t1, t2), queue);
+                    }
+                }
+            }
+        }
+        if (!out.isEmpty())
+            deliver(queue, out, false);
+    }
+
+    private ArrayList<Tuple> emit(ArrayList<Tuple> out, Tuple t,
+            BlockingQueue<ArrayList<Tuple>> queue) {
+        out.add(t);
+        if (out.size() < BATCH_SIZE)
+            return out;
+        deliver(queue, out, false);
+        return new ArrayList<Tuple>(BATCH_SIZE);
+    }
+
+    /**
+     * Put a batch on the queue, waiting for room unless the join has been
+     * cancelled. The end marker is always delivered, even if the worker is
+     * interrupted while waiting; an interrupt while delivering any other
+     * batch fails the join.
+     */
+    private void deliver(BlockingQueue<ArrayList<Tuple>> queue, ArrayList<Tuple> b,
+            boolean always) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (queue.offer(b, 10, TimeUnit.MILLISECONDS))
+                        return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    if (!always) {
+                        if (failure == null)
+                            failure = e;
+                        cancelled = true;
+                        return;
+                    }
+                    continue;
+                }
+                if (cancelled) {
+                    if (!always)
+                        return;
+                    queue.clear();
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+        int td1n = t1.getTupleDesc().numFields();
+        int td2n = t2.getTupleDesc().numFields();
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < td1n; i++)
+            t.setField(i, t1.getField(i));
+        for (int i = 0; i < td2n; i++)
+            t.setField(td1n + i, t2.getField(i));
+        return t;
+    }
+
+    /**
+     * Stop the workers of the current run and wait for them to finish.
+     */
+    private void stop() {
+        if (results == null)
+            return;
+        cancelled = true;
+        if (batch != END) {
+            try {
+                ArrayList<Tuple> b;
+                do {
+                    b = results.take();
+                } while (b != END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        results = null;
+    }
+
+    public void close() {
+        stop();
+        if (fallback != null) {
+            fallback.close();
+            fallback = null;
+        }
+        super.close();
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        leftChunks = rightChunks = null;
+        batch = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (fallback != null) {
+            fallback.rewind();
+            return;
+        }
+        stop();
+        start();
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. The tuples are the concatenation of joining tuples from the
+     * left and right relation, as for {@link Join}.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (fallback != null)
+            return fallback.hasNext() ? fallback.next() : null;
+        while (batch == null || batchPos == batch.size()) {
+            if (batch == END)
+                return null;
+            try {
+                batch = results.take();
+            } catch (InterruptedException e) {
+                throw new DbException("interrupted while waiting for join results");
+            }
+            batchPos = 0;
+            if (batch == END && failure != null)
+                throw new DbException("parallel hash join failed: " + failure);
+        }
+        return batch.get(batchPos++);
+    }
+}
@@ -0,0 +1,297 @@
+package simpledb;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelSort sorts an array of tuples in memory with fork-join tasks. The
+ * array is halved until the pieces are at most {@link #CHUNK_SIZE} long; each
+ * piece is sorted by one task, and sorted halves are merged by tasks that cut
+ * the merge in two around the middle of the longer half, so that the merges
+ * near the top run on several threads too.
+ * <p>
+ * When the order is a {@link TupleComparator} on a single INT field, the key
+ * of each tuple is read with {@link Tuple#getInt}, without decoding a Field,
+ * and packed with the position of the tuple into a long. The longs are sorted
+ * as primitives and the tuples are then moved to the positions they name.
+ * Either way the sort is stable.
+ */
+final class ParallelSort {
+
+    /** Pieces of at most this many tuples are sorted or merged by one task. */
+    static final int CHUNK_SIZE = 8192;
+
+    private ParallelSort() {
+    }
+
+    /**
+     * Sort tuples in place.
+     *
+     * @param tuples the tuples to sort
+     * @param comparator the order to sort them in
+     * @param pool the pool to sort on, which the caller keeps and shuts down;
+     *            if null the tuples are sorted on the calling thread
+     */
+    static void sort(Tuple[] tuples, Comparator<Tuple> comparator, ForkJoinPool pool) {
+        final int n = tuples.length;
+        final int chunk = pool == null ? Math.max(1, n) : CHUNK_SIZE;
+        final RecursiveAction sort;
+        final RecursiveAction move;
+        if (isIntKey(comparator)) {
+            TupleComparator tc = (TupleComparator) comparator;
+            long[] keys = new long[n];
+            sort = new KeySort(tuples, tc.getField(0), tc.isAscending(0), keys, new long[n],
+                    0, n, chunk);
+            move = new Gather(tuples, tuples.clone(), keys, 0, n, chunk);
+        } else {
+            sort = new TupleSort(tuples, new Tuple[n], comparator, 0, n, chunk);
+            move = null;
+        }
+        RecursiveAction all = new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            protected void compute() {
+                sort.invoke();
+                if (move != null)
+                    move.invoke();
+            }
+        };
+        if (n <= chunk) {
+            // nothing is forked, so there is no need for worker threads
+            all.invoke();
+            return;
+        }
+        pool.invoke(all);
+    }
+
+    private static boolean isIntKey(Comparator<Tuple> comparator) {
+        if (!(comparator instanceof TupleComparator))
+            return false;
+        TupleComparator tc = (TupleComparator) comparator;
+        return tc.getKeyCount() == 1 && tc.getKeyType(0) == TupleComparator.KeyType.INT;
+    }
+
+    /**
+     * Fills keys[lo, hi) with the keys of tuples[lo, hi), each in the high
+     * half of a long above the position of its tuple, and sorts them. Keys
+     * of a descending sort are complemented, which reverses their order.
+     */
+    private static final class KeySort extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Tuple[] tuples;
+        private final int field;
+        private final boolean asc;
+        private final long[] keys;
+        private final long[] work;
+        private final int lo, hi, chunk;
+
+        KeySort(Tuple[] tuples, int field, boolean asc, long[] keys, long[] work,
+                int lo, int hi, int chunk) {
+            this.tuples = tuples;
+            this.field = field;
+            this.asc = asc;
+            this.keys = keys;
+            this.work = work;
+            this.lo = lo;
+            this.hi = hi;
+            this.chunk = chunk;
+        }
+
+        protected void compute() {
+            if (hi - lo <= chunk) {
+                for (int i = lo; i < hi; i++) {
+                    int k = tuples[i].getInt(field);
+                    keys[i] = ((long) (asc ? k : ~k) << 32) | i;
+                }
+                Arrays.sort(keys, lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new KeySort(tuples, field, asc, keys, work, lo, mid, chunk),
+                    new KeySort(tuples, field, asc, keys, work, mid, hi, chunk));
+            new KeyMerge(keys, work, lo, mid, mid, hi, lo, chunk).invoke();
+            System.arraycopy(work, lo, keys, lo, hi - lo);
+        }
+    }
+
+    /** Merges from[lo1, hi1) and from[lo2, hi2) into to, starting at out. */
+    private static final class KeyMerge extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] from;
+        private final long[] to;
+        private final int lo1, hi1, lo2, hi2, out, chunk;
+
+        KeyMerge(long[] from, long[] to, int lo1, int hi1, int lo2, int hi2, int out,
+                int chunk) {
+            this.from = from;
+            this.to = to;
+            this.lo1 = lo1;
+            this.hi1 = hi1;
+            this.lo2 = lo2;
+            this.hi2 = hi2;
+            this.out = out;
+            this.chunk = chunk;
+        }
+
+        protected void compute() {
+            int n1 = hi1 - lo1;
+            int n2 = hi2 - lo2;
+            if (n1 + n2 <= chunk) {
+                int i = lo1, j = lo2, o = out;
+                while (i < hi1 && j < hi2)
+                    to[o++] = from[j] < from[i] ? from[j++] : from[i++];
+                System.arraycopy(from, i, to, o, hi1 - i);
+                System.arraycopy(from, j, to, o + hi1 - i, hi2 - j);
+                return;
+            }
+            // split at a key of the longer range; the keys are distinct, as
+            // each holds the position of its tuple, so the search for it in
+            // the other range returns the insertion point
+            int m1, m2;
+            if (n1 >= n2) {
+                m1 = (lo1 + hi1) >>> 1;
+                m2 = -Arrays.binarySearch(from, lo2, hi2, from[m1]) - 1;
+            } else {
+                m2 = (lo2 + hi2) >>> 1;
+                m1 = -Arrays.binarySearch(from, lo1, hi1, from[m2]) - 1;
+            }
+            invokeAll(new KeyMerge(from, to, lo1, m1, lo2, m2, out, chunk),
+                    new KeyMerge(from, to, m1, hi1, m2, hi2, out + (m1 - lo1) + (m2 - lo2),
+                            chunk));
+        }
+    }
+
+    /** Moves the tuple at each position named in keys[lo, hi) to its place. */
+    private static final class Gather extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Tuple[] tuples;
+        private final Tuple[] original;
+        private final long[] keys;
+        private final int lo, hi, chunk;
+
+        Gather(Tuple[] tuples, Tuple[] original, long[] keys, int lo, int hi, int chunk) {
+            this.tuples = tuples;
+            this.original = original;
+            this.keys = keys;
+            this.lo = lo;
+            this.hi = hi;
+            this.chunk = chunk;
+        }
+
+        protected void compute() {
+            if (hi - lo <= chunk) {
+                for (int i = lo; i < hi; i++)
+                    tuples[i] = original[(int) keys[i]];
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Gather(tuples, original, keys, lo, mid, chunk),
+                    new Gather(tuples, original, keys, mid, hi, chunk));
+        }
+    }
+
+    /** Sorts tuples[lo, hi) with a comparator. */
+    private static final class TupleSort extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Tuple[] tuples;
+        private final Tuple[] work;
+        private final Comparator<Tuple> comparator;
+        private final int lo, hi, chunk;
+
+        TupleSort(Tuple[] tuples, Tuple[] work, Comparator<Tuple> comparator, int lo, int hi,
+                int chunk) {
+            this.tuples = tuples;
+            this.work = work;
+            this.comparator = comparator;
+            this.lo = lo;
+            this.hi = hi;
+            this.chunk = chunk;
+        }
+
+        protected void compute() {
+            if (hi - lo <= chunk) {
+                Arrays.sort(tuples, lo, hi, comparator);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new TupleSort(tuples, work, comparator, lo, mid, chunk),
+                    new TupleSort(tuples, work, comparator, mid, hi, chunk));
+            new TupleMerge(tuples, work, comparator, lo, mid, mid, hi, lo, chunk).invoke();
+            System.arraycopy(work, lo, tuples, lo, hi - lo);
+        }
+    }
+
+    /**
+     * Merges from[lo1, hi1) and from[lo2, hi2) into to, starting at out.
+     * Equal tuples of the first range come before those of the second.
+     */
+    private static final class TupleMerge extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Tuple[] from;
+        private final Tuple[] to;
+        private final Comparator<Tuple> comparator;
+        private final int lo1, hi1, lo2, hi2, out, chunk;
+
+        TupleMerge(Tuple[] from, Tuple[] to, Comparator<Tuple> comparator, int lo1, int hi1,
+                int lo2, int hi2, int out, int chunk) {
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+            this.lo1 = lo1;
+            this.hi1 = hi1;
+            this.lo2 = lo2;
+            this.hi2 = hi2;
+            this.out = out;
+            this.chunk = chunk;
+        }
+
+        protected void compute() {
+            int n1 = hi1 - lo1;
+            int n2 = hi2 - lo2;
+            if (n1 + n2 <= chunk) {
+                int i = lo1, j = lo2, o = out;
+                while (i < hi1 && j < hi2)
+                    to[o++] = comparator.compare(from[j], from[i]) < 0 ? from[j++] : from[i++];
+                System.arraycopy(from, i, to, o, hi1 - i);
+                System.arraycopy(from, j, to, o + hi1 - i, hi2 - j);
+                return;
+            }
+            // split at a tuple of the longer range, putting the tuples of the
+            // second range equal to it after it, and those of the first before
+            int m1, m2;
+            if (n1 >= n2) {
+                m1 = (lo1 + hi1) >>> 1;
+                m2 = search(lo2, hi2, from[m1], false);
+            } else {
+                m2 = (lo2 + hi2) >>> 1;
+                m1 = search(lo1, hi1, from[m2], true);
+            }
+            invokeAll(new TupleMerge(from, to, comparator, lo1, m1, lo2, m2, out, chunk),
+                    new TupleMerge(from, to, comparator, m1, hi1, m2, hi2,
+                            out + (m1 - lo1) + (m2 - lo2), chunk));
+        }
+
+        /**
+         * @return the first position in from[lo, hi) of a tuple after t, or
+         *         not before t if inclusive is false
+         */
+        private int search(int lo, int hi, Tuple t, boolean inclusive) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = comparator.compare(from[mid], t);
+                if (c < 0 || (inclusive && c == 0))
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import Zql.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -12,6 +14,43 @@ import jline.SimpleCompletor;
 public class Parser {
     static boolean explain = false;
 
+    // a LIMIT clause at the end of a statement, which ZQL does not parse
+    private static final Pattern LIMIT_CLAUSE = Pattern.compile(
+            "(?is)\\s+limit\\s+(\\d+)\\s*$");
+
+    /**
+     * @return the n of a "LIMIT n" clause ending the first statement of sql,
+     *         or -1 if it has none
+     * @throws simpledb.ParsingException if n does not fit in an int
+     */
+    static int parseLimit(String sql) throws simpledb.ParsingException {
+        Matcher m = LIMIT_CLAUSE.matcher(firstStatement(sql));
+        if (!m.find())
+            return -1;
+        try {
+            return Integer.parseInt(m.group(1));
+        } catch (NumberFormatException e) {
+            throw new simpledb.ParsingException("LIMIT too large: " + m.group(1));
+        }
+    }
+
+    /**
+     * @return sql without the LIMIT clause ending its first statement, so
+     *         that ZQL can parse it
+     */
+    static String removeLimit(String sql) {
+        String first = firstStatement(sql);
+        Matcher m = LIMIT_CLAUSE.matcher(first);
+        if (!m.find())
+            return sql;
+        return first.substring(0, m.start()) + sql.substring(first.length());
+    }
+
+    private static String firstStatement(String sql) {
+        int end = sql.indexOf(';');
+        return end < 0 ? sql : sql.substring(0, end);
+    }
+
     public static Predicate.Op getOp(String s) throws simpledb.ParsingException {
         if (s.equals("="))
             return Predicate.Op.EQUALS;
@@ -276,10 +315,21 @@ public class Parser {
     public Query handleQueryStatement(ZQuery s, TransactionId tId)
             throws TransactionAbortedException, DbException, IOException,
             simpledb.ParsingException, Zql.ParseException {
+        return handleQueryStatement(s, tId, -1);
+    }
+
+    /**
+     * @param limit the LIMIT of the query, or -1 if it has none
+     */
+    public Query handleQueryStatement(ZQuery s, TransactionId tId, int limit)
+            throws TransactionAbortedException, DbException, IOException,
+            simpledb.ParsingException, Zql.ParseException {
         // and run it
         Query query = new Query(tId);
 
         LogicalPlan lp = parseQueryLogicalPlan(tId, s);
+        if (limit >= 0)
+            lp.addLimit(limit);
         DbIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
@@ -466,12 +516,15 @@ public class Parser {
 
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
+        int limit = parseLimit(s);
+        ByteArrayInputStream bis = new ByteArrayInputStream(removeLimit(s).getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
             if (stmt instanceof ZQuery) {
                 LogicalPlan lp = parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                if (limit >= 0)
+                    lp.addLimit(limit);
                 return lp;
             }
         } catch (Zql.ParseException e) {
@@ -504,7 +557,10 @@ public class Parser {
 
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            String sql = readAll(is);
+            int limit = parseLimit(sql);
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(
+                    removeLimit(sql).getBytes("UTF-8")));
             ZStatement s = p.readStatement();
 
             Query query = null;
@@ -518,6 +574,9 @@ public class Parser {
                             + curtrans.getId().getId());
                 }
                 try {
+                    if (limit >= 0 && !(s instanceof ZQuery))
+                        throw new simpledb.ParsingException(
+                                "LIMIT is only supported in queries");
                     if (s instanceof ZInsert)
                         query = handleInsertStatement((ZInsert) s,
                                 curtrans.getId());
@@ -526,7 +585,7 @@ public class Parser {
                                 curtrans.getId());
                     else if (s instanceof ZQuery)
                         query = handleQueryStatement((ZQuery) s,
-                                curtrans.getId());
+                                curtrans.getId(), limit);
                     else {
                         System.out
                                 .println("Can't parse "
@@ -579,10 +638,19 @@ public class Parser {
         }
     }
 
+    private static String readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = is.read(buf)) > 0)
+            out.write(buf, 0, n);
+        return out.toString("UTF-8");
+    }
+
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "limit" };
 
     public static void main(String argv[]) throws IOException {
 
@@ -9,6 +9,7 @@ public class PlanCache {
     HashMap<Set<LogicalJoinNode>,Vector<LogicalJoinNode>> bestOrders= new HashMap<Set<LogicalJoinNode>,Vector<LogicalJoinNode>>();
     HashMap<Set<LogicalJoinNode>,Double> bestCosts= new HashMap<Set<LogicalJoinNode>,Double>();
     HashMap<Set<LogicalJoinNode>,Integer> bestCardinalities = new HashMap<Set<LogicalJoinNode>,Integer>();
+    HashMap<Set<LogicalJoinNode>,JoinAlgorithm> bestAlgorithms = new HashMap<Set<LogicalJoinNode>,JoinAlgorithm>();
     
     /** Add a new cost, cardinality and ordering for a particular join set.  Does not verify that the
         new cost is less than any previously added cost -- simply adds or replaces an existing plan for the
@@ -19,9 +20,20 @@ public class PlanCache {
         @param order the ordering of the joins in the plan
     */
     void addPlan(Set<LogicalJoinNode> s, double cost, int card, Vector<LogicalJoinNode> order) {
+        addPlan(s, cost, card, order, null);
+    }
+
+    /** Add a new cost, cardinality, ordering and algorithm of the last join
+        for a particular join set.  Like {@link #addPlan(Set, double, int, Vector)},
+        simply adds or replaces an existing plan.
+        @param algorithm the algorithm of the last join in order
+    */
+    void addPlan(Set<LogicalJoinNode> s, double cost, int card, Vector<LogicalJoinNode> order,
+                 JoinAlgorithm algorithm) {
         bestOrders.put(s,order);                        
         bestCosts.put(s,cost);
         bestCardinalities.put(s,card);
+        bestAlgorithms.put(s,algorithm);
     }
     
     /** Find the best join order in the cache for the specified plan 
@@ -47,4 +59,12 @@ public class PlanCache {
     int getCard(Set<LogicalJoinNode> s) {
         return bestCardinalities.get(s);
     }
+
+    /** Find the algorithm of the last join of the best order in the cache for the specified plan
+        @param s the set of joins to look up the algorithm for
+        @return the algorithm of the last join of the best order for s, or null if none was recorded
+    */
+    JoinAlgorithm getAlgorithm(Set<LogicalJoinNode> s) {
+        return bestAlgorithms.get(s);
+    }
 }
@@ -102,6 +102,66 @@ public class Predicate implements Serializable {
         return t.getField(fieldNum).compare(op, operand); 
     }
 
+    /**
+     * Narrows the selection of a batch to its tuples for which
+     * {@link #filter(Tuple)} would return true. A comparison of an INT_TYPE
+     * field with an int operand is made on the int vector of the field,
+     * without creating Fields.
+     *
+     * @param batch
+     *            The batch to filter
+     * @return the number of tuples of the batch left selected
+     */
+    public int filter(TupleBatch batch) {
+        int[] sel = batch.getSelection();
+        int n = batch.size();
+        int kept = 0;
+        if (operand instanceof IntField
+                && batch.getTupleDesc().getFieldType(fieldNum) == Type.INT_TYPE) {
+            int[] values = batch.getInts(fieldNum);
+            int v = ((IntField) operand).getValue();
+            switch (op) {
+            case EQUALS:
+            case LIKE:
+                for (int i = 0; i < n; i++)
+                    if (values[sel[i]] == v)
+                        sel[kept++] = sel[i];
+                break;
+            case NOT_EQUALS:
+                for (int i = 0; i < n; i++)
+                    if (values[sel[i]] != v)
+                        sel[kept++] = sel[i];
+                break;
+            case GREATER_THAN:
+                for (int i = 0; i < n; i++)
+                    if (values[sel[i]] > v)
+                        sel[kept++] = sel[i];
+                break;
+            case GREATER_THAN_OR_EQ:
+                for (int i = 0; i < n; i++)
+                    if (values[sel[i]] >= v)
+                        sel[kept++] = sel[i];
+                break;
+            case LESS_THAN:
+                for (int i = 0; i < n; i++)
+                    if (values[sel[i]] < v)
+                        sel[kept++] = sel[i];
+                break;
+            case LESS_THAN_OR_EQ:
+                for (int i = 0; i < n; i++)
+                    if (values[sel[i]] <= v)
+                        sel[kept++] = sel[i];
+                break;
+            }
+        } else {
+            for (int i = 0; i < n; i++)
+                if (batch.getField(fieldNum, sel[i]).compare(op, operand))
+                    sel[kept++] = sel[i];
+        }
+        batch.setSize(kept);
+        return kept;
+    }
+
     /**
      * Returns something useful, like "f = field_id op = op_string operand =
      * operand_string
@@ -4,13 +4,18 @@ import java.util.*;
 
 /**
  * Project is an operator that implements a relational projection.
+ * <p>
+ * Read by batches, it returns a view of the projected columns of each batch
+ * of its child, without copying them.
  */
-public class Project extends Operator {
+public class Project extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     private DbIterator child;
     private TupleDesc td;
     private ArrayList<Integer> outFieldIds;
+    private transient BatchIterator batchChild;
+    private transient int[] columns;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -48,6 +53,10 @@ public class Project extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
+        batchChild = BatchAdapter.of(child);
+        columns = new int[outFieldIds.size()];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = outFieldIds.get(i);
         super.open();
     }
 
@@ -80,6 +89,11 @@ public class Project extends Operator {
         return null;
     }
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch batch = batchChild.nextBatch();
+        return batch == null ? null : batch.project(td, columns);
+    }
+
     @Override
     public DbIterator[] getChildren() {
         return new DbIterator[] { this.child };
@@ -0,0 +1,145 @@
+package simpledb;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ReadAhead watches the pages a single scan reads from a HeapFile and, once
+ * the scan turns out to be sequential, reads the following pages into the
+ * buffer pool on a background thread so that the scan finds them resident.
+ * <p>
+ * The prefetch window adapts to the scan: it starts at {@link #INITIAL_WINDOW}
+ * pages and doubles each time the scan reaches the second half of the pages
+ * already requested, up to a limit that keeps prefetched pages from pushing
+ * each other out of the pool (half the scan's {@link BufferRing}, or a quarter
+ * of the pool for scans without one). A jump to a non-consecutive page
+ * shrinks the window back to its initial size. How many prefetched pages were
+ * used or wasted is reported by {@link BufferPool#getPrefetchUsedCount} and
+ * {@link BufferPool#getPrefetchWastedCount}.
+ */
+public class ReadAhead {
+
+    /** Consecutive page reads after which prefetching starts. */
+    public static final int TRIGGER = 2;
+
+    /** Number of pages prefetched by the first batch. */
+    public static final int INITIAL_WINDOW = 4;
+
+    /** Upper bound on the prefetch window, in pages. */
+    public static final int MAX_WINDOW = 64;
+
+    private static final ExecutorService executor =
+        Executors.newFixedThreadPool(2, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "simpledb-readahead");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    private final BufferPool pool;
+    private final HeapFile file;
+    private final BufferRing ring;
+    private final int endPage;
+    private final int maxWindow;
+
+    private int window;
+    private int lastPage = -1;
+    private int run = 0;
+    // highest page number requested from the background thread so far
+    private int requestedUpTo = -1;
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param pool the buffer pool the scan reads through
+     * @param file the file being scanned
+     * @param ring the scan's ring, or null if it reads through the shared pool
+     */
+    public ReadAhead(BufferPool pool, HeapFile file, BufferRing ring) {
+        this(pool, file, ring, -1);
+    }
+
+    /**
+     * @param pool the buffer pool the scan reads through
+     * @param file the file being scanned
+     * @param ring the scan's ring, or null if it reads through the shared pool
+     * @param endPage the page after the last page the scan reads, beyond
+     *            which nothing is prefetched, or -1 if it scans to the end
+     *            of the file
+     */
+    public ReadAhead(BufferPool pool, HeapFile file, BufferRing ring, int endPage) {
+        this.pool = pool;
+        this.file = file;
+        this.ring = ring;
+        this.endPage = endPage;
+        int limit = ring != null ? ring.size() / 2 : pool.getNumPages() / 4;
+        this.maxWindow = Math.max(0, Math.min(MAX_WINDOW, limit));
+        this.window = Math.min(INITIAL_WINDOW, maxWindow);
+    }
+
+    /** @return the current prefetch window, in pages */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Tell the read-ahead that the scan is about to read page pageNo; issues
+     * the next batch of prefetches if the scan is sequential and has used up
+     * half of the previous batch.
+     */
+    public void accessed(int pageNo) {
+        if (maxWindow == 0 || cancelled || pageNo == lastPage)
+            return;
+        if (pageNo == lastPage + 1) {
+            run++;
+        } else {
+            // random access: start over with a small window
+            run = 1;
+            window = Math.min(INITIAL_WINDOW, maxWindow);
+            requestedUpTo = pageNo;
+        }
+        lastPage = pageNo;
+        if (run < TRIGGER || pageNo + window / 2 < requestedUpTo)
+            return;
+
+        if (requestedUpTo >= pageNo) {
+            // the scan kept up with the last batch, so fetch further ahead
+            window = Math.min(window * 2, maxWindow);
+        }
+        int first = Math.max(pageNo, requestedUpTo) + 1;
+        int end = endPage < 0 ? file.numPages() : Math.min(endPage, file.numPages());
+        int last = Math.min(pageNo + window, end - 1);
+        if (first > last)
+            return;
+        requestedUpTo = last;
+        submit(first, last);
+    }
+
+    /** Stop issuing prefetches; batches already running stop early. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void submit(final int first, final int last) {
+        final int tableId = file.getId();
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    for (int i = first; i <= last && !cancelled; i++) {
+                        try {
+                            pool.prefetchPage(new HeapPageId(tableId, i), ring);
+                        } catch (DbException e) {
+                            // the pool is full of pages that cannot be evicted;
+                            // the scan will read the rest itself
+                            return;
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // prefetching is only a hint
+        }
+    }
+}
@@ -6,8 +6,11 @@ import java.util.*;
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
+ * <p>
+ * Read by batches, a scan of a {@link HeapFile} copies the values of the
+ * tuples straight from its pages into the batch.
  */
-public class SeqScan implements DbIterator {
+public class SeqScan implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
 
@@ -33,6 +36,7 @@ public class SeqScan implements DbIterator {
     private String tableAlias;
     private DbFile file;
     private DbFileIterator fileIterator;
+    private transient TupleBatch batch;
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
         this.tid = tid;
         this.tableid = tableid;
@@ -51,6 +55,20 @@ public class SeqScan implements DbIterator {
         return Database.getCatalog().getTableName(tableid);
     }
     
+    /**
+     * @return the id of the table the operator scans
+     */
+    public int getTableId() {
+        return tableid;
+    }
+
+    /**
+     * @return the transaction the operator scans the table as a part of
+     */
+    public TransactionId getTransactionId() {
+        return tid;
+    }
+    
     /**
      * @return Return the alias of the table this operator scans. 
      * */
@@ -74,6 +92,7 @@ public class SeqScan implements DbIterator {
     public void reset(int tableid, String tableAlias) {
         this.tableid = tableid;
         this.tableAlias = tableAlias;
+        batch = null;
     }
 
     public SeqScan(TransactionId tid, int tableid) {
@@ -125,6 +144,19 @@ public class SeqScan implements DbIterator {
         return fileIterator.next();
     }
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null)
+            batch = new TupleBatch(getTupleDesc());
+        batch.clear();
+        if (fileIterator instanceof HeapFileIterator) {
+            ((HeapFileIterator) fileIterator).nextBatch(batch);
+        } else {
+            while (!batch.isFull() && fileIterator.hasNext())
+                batch.addTuple(fileIterator.next());
+        }
+        return batch.size() > 0 ? batch : null;
+    }
+
     public void close() {
         fileIterator.close();
     }
@@ -0,0 +1,242 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * SortMergeJoin evaluates a join by sorting its inputs on the join fields and
+ * merging them, with {@link ExternalSort} spilling to disk if an input does
+ * not fit in memory. An input that already comes out of an {@link OrderBy} or
+ * ExternalSort in the order the join needs is not sorted again.
+ * <p>
+ * For {@link Predicate.Op#EQUALS} both inputs are sorted and each group of
+ * equal inner tuples is joined with the outer tuples of the same key. For the
+ * range predicates (&lt;, &lt;=, &gt;, &gt;=) only the inner input is sorted,
+ * in the order that puts the matches of every outer tuple at its start, and
+ * each outer tuple reads the sorted inner input up to its first non-matching
+ * tuple. Other predicates are not supported.
+ * <p>
+ * The sorts are part of this operator: {@link #getChildren} returns the
+ * unsorted inputs.
+ */
+public class SortMergeJoin extends Join {
+
+    private static final long serialVersionUID = 1L;
+
+    private DbIterator child1;
+    private DbIterator child2;
+    private final int memoryBudget;
+
+    private transient TupleDesc td;
+    private transient DbIterator outer;
+    private transient DbIterator inner;
+    private transient Tuple outerTup;
+    // EQUALS: the inner tuples whose key equals the current outer key
+    private transient ArrayList<Tuple> group;
+    private transient int groupPos;
+    // EQUALS: the first inner tuple after group
+    private transient Tuple innerNext;
+    // EQUALS: compares an inner key with an outer key
+    private transient TupleComparator.KeyType keyType;
+
+    /**
+     * Constructor. Sorts with the {@link ExternalSort#DEFAULT_MEMORY_BUDGET}.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @throws IllegalArgumentException if the predicate is not supported
+     */
+    public SortMergeJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, ExternalSort.DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @param memoryBudget
+     *            Memory budget of each sort, in bytes
+     * @throws IllegalArgumentException if the predicate is not supported
+     */
+    public SortMergeJoin(JoinPredicate p, DbIterator child1, DbIterator child2,
+            int memoryBudget) {
+        super(p, sorted(p, child1, p.getField1(), true, memoryBudget),
+              sorted(p, child2, p.getField2(), false, memoryBudget));
+        if (!supports(p.getOperator()))
+            throw new IllegalArgumentException("sort-merge join does not support " + p.getOperator());
+        this.child1 = child1;
+        this.child2 = child2;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return true if SortMergeJoin can evaluate joins with the predicate op
+     */
+    public static boolean supports(Predicate.Op op) {
+        return op == Predicate.Op.EQUALS
+            || op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ
+            || op == Predicate.Op.GREATER_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ;
+    }
+
+    /**
+     * @return child sorted as the join needs it: outer inputs in ascending
+     *         order for equality and as they are otherwise, inner inputs in
+     *         ascending order except for &lt; and &lt;=, whose matches are
+     *         the largest inner keys
+     */
+    private static DbIterator sorted(JoinPredicate p, DbIterator child,
+            int field, boolean outer, int memoryBudget) {
+        Predicate.Op op = p.getOperator();
+        if (outer && op != Predicate.Op.EQUALS)
+            return child;
+        boolean asc = !(op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ);
+        if (isSorted(child, field, asc))
+            return child;
+        return new ExternalSort(new TupleComparator(child.getTupleDesc(), field, asc),
+                child, memoryBudget);
+    }
+
+    /**
+     * @return true if child is known to return its tuples ordered on field
+     */
+    private static boolean isSorted(DbIterator child, int field, boolean asc) {
+        if (child instanceof OrderBy) {
+            OrderBy o = (OrderBy) child;
+            return o.getOrderByField() == field && o.isASC() == asc;
+        }
+        if (child instanceof ExternalSort) {
+            Comparator<Tuple> c = ((ExternalSort) child).getComparator();
+            if (c instanceof TupleComparator) {
+                TupleComparator tc = (TupleComparator) c;
+                return tc.getField(0) == field && tc.isAscending(0) == asc;
+            }
+        }
+        return false;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        super.open();
+        DbIterator[] sortedChildren = super.getChildren();
+        outer = sortedChildren[0];
+        inner = sortedChildren[1];
+        td = getTupleDesc();
+        keyType = TupleComparator.KeyType.of(
+            outer.getTupleDesc().getFieldType(getJoinPredicate().getField1()));
+        group = new ArrayList<Tuple>();
+        reset();
+    }
+
+    public void close() {
+        super.close();
+        group = null;
+        outerTup = null;
+        innerNext = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        outer.rewind();
+        inner.rewind();
+        reset();
+    }
+
+    private void reset() throws DbException, TransactionAbortedException {
+        outerTup = null;
+        group.clear();
+        groupPos = 0;
+        innerNext = null;
+        if (getJoinPredicate().getOperator() == Predicate.Op.EQUALS)
+            innerNext = inner.hasNext() ? inner.next() : null;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (getJoinPredicate().getOperator() == Predicate.Op.EQUALS)
+            return fetchNextEquals();
+        return fetchNextRange();
+    }
+
+    private Tuple fetchNextEquals() throws TransactionAbortedException, DbException {
+        JoinPredicate p = getJoinPredicate();
+        int f1 = p.getField1(), f2 = p.getField2();
+        while (true) {
+            if (outerTup != null && groupPos < group.size())
+                return merge(outerTup, group.get(groupPos++));
+            if (!outer.hasNext())
+                return null;
+            outerTup = outer.next();
+            groupPos = 0;
+            Field key = outerTup.getField(f1);
+            if (!group.isEmpty() && keyType.compare(group.get(0).getField(f2), key) == 0)
+                continue;
+            // advance the inner input past the group of key, if there is one
+            group.clear();
+            while (innerNext != null) {
+                int c = keyType.compare(innerNext.getField(f2), key);
+                if (c > 0)
+                    break;
+                if (c == 0)
+                    group.add(innerNext);
+                innerNext = inner.hasNext() ? inner.next() : null;
+            }
+        }
+    }
+
+    private Tuple fetchNextRange() throws TransactionAbortedException, DbException {
+        JoinPredicate p = getJoinPredicate();
+        while (true) {
+            if (outerTup != null) {
+                if (inner.hasNext()) {
+                    Tuple innerTup = inner.next();
+                    if (p.filter(outerTup, innerTup))
+                        return merge(outerTup, innerTup);
+                }
+                // past the matches of outerTup
+                outerTup = null;
+            }
+            if (!outer.hasNext())
+                return null;
+            outerTup = outer.next();
+            inner.rewind();
+        }
+    }
+
+    private Tuple merge(Tuple t1, Tuple t2) {
+        Tuple combined = new Tuple(td);
+        int n1 = t1.getTupleDesc().numFields();
+        for (int i = 0; i < n1; i++)
+            combined.setField(i, t1.getField(i));
+        for (int j = 0; j < t2.getTupleDesc().numFields(); j++)
+            combined.setField(n1 + j, t2.getField(j));
+        return combined;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { child1, child2 };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        child1 = children[0];
+        child2 = children[1];
+        JoinPredicate p = getJoinPredicate();
+        super.setChildren(new DbIterator[] {
+            sorted(p, child1, p.getField1(), true, memoryBudget),
+            sorted(p, child2, p.getField2(), false, memoryBudget) });
+    }
+}
@@ -0,0 +1,162 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * SpillFile is a temporary file of tuples that an operator writes when its
+ * input does not fit in memory, such as a sorted run of {@link ExternalSort}.
+ * Tuples are appended with {@link #add} and then read back, in the same order,
+ * through the DbIterator interface; the first call to {@link #open} ends the
+ * writing. Each tuple is stored as a fixed-size record laid out like a tuple
+ * on a {@link HeapPage}, without any page structure.
+ * <p>
+ * Spill files do not go through the buffer pool and are not part of the
+ * catalog. Call {@link #delete} once the tuples are no longer needed.
+ */
+public class SpillFile implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Size of the buffers used to write and read spill files, in bytes. */
+    public static final int BUFFER_SIZE = 16 * BufferPool.PAGE_SIZE;
+
+    private final TupleDesc td;
+    private final File file;
+    private final byte[] record;
+    private final ByteBuffer recordBuf;
+    private transient DataOutputStream out;
+    private transient DataInputStream in;
+    private int size = 0;
+    private int read = 0;
+
+    /**
+     * Create an empty spill file in the default temporary directory.
+     *
+     * @param td the schema of the tuples that will be added
+     */
+    public SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.file = File.createTempFile("simpledb-spill", ".tmp");
+        file.deleteOnExit();
+        this.record = new byte[td.getSize()];
+        this.recordBuf = ByteBuffer.wrap(record);
+        this.out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * Append a tuple to the file.
+     *
+     * @throws IllegalStateException if the file has already been opened for
+     *         reading
+     */
+    public void add(Tuple t) throws IOException {
+        if (out == null)
+            throw new IllegalStateException("spill file is read-only once opened");
+        for (int i = 0; i < td.numFields(); i++)
+            t.getField(i).serialize(recordBuf, td.getFieldOffset(i));
+        out.write(record);
+        size++;
+    }
+
+    /**
+     * @return which of n partitions an operator that splits its input by hash
+     *         into spill files puts a key in; each level of repartitioning
+     *         uses a different hash function, so that keys that shared a
+     *         partition are spread out again
+     */
+    public static int partitionOf(Field key, int level, int n) {
+        int h = key.hashCode() ^ (level * 0x9e3779b9);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % n;
+    }
+
+    /** @return the number of tuples in the file */
+    public int size() {
+        return size;
+    }
+
+    /** @return the file holding the tuples */
+    public File getFile() {
+        return file;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException {
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            close();
+            in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new DbException("could not read spill file: " + e.getMessage());
+        }
+        read = 0;
+    }
+
+    public boolean hasNext() {
+        if (in == null)
+            throw new IllegalStateException("spill file not open");
+        return read < size;
+    }
+
+    public Tuple next() throws DbException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        try {
+            in.readFully(record);
+        } catch (IOException e) {
+            throw new DbException("could not read spill file: " + e.getMessage());
+        }
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < td.numFields(); i++)
+            t.setField(i, td.getFieldType(i).parse(recordBuf, td.getFieldOffset(i)));
+        read++;
+        return t;
+    }
+
+    public void rewind() throws DbException {
+        if (in == null)
+            throw new IllegalStateException("spill file not open");
+        open();
+    }
+
+    public void close() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing was written through this stream
+            }
+            in = null;
+        }
+    }
+
+    /**
+     * Close the file and remove it from disk.
+     */
+    public void delete() {
+        close();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+            out = null;
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,128 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * StreamAggregate computes the same aggregate as {@link Aggregate} over a
+ * child whose tuples come grouped on the group-by field, such as the output
+ * of an {@link OrderBy} on it. Instead of hashing every group before
+ * returning any, it folds consecutive tuples with the same group value into a
+ * single {@link Accumulator} and returns the group as soon as the value
+ * changes, so it holds one group at a time and returns its first group
+ * without reading the whole child.
+ * <p>
+ * If the child is not grouped on the field, a group that occurs in several
+ * runs is returned once per run.
+ */
+public class StreamAggregate extends Aggregate {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient TupleDesc resultTd;
+    // the first tuple of the next group, or null if it has not been read
+    private transient Tuple pending;
+    private transient boolean done;
+
+    /**
+     * Constructor.
+     *
+     * @see Aggregate#Aggregate(DbIterator, int, int, Aggregator.Op)
+     */
+    public StreamAggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop) {
+        super(child, afield, gfield, aop);
+    }
+
+    /**
+     * @return true if child is known to return the tuples with equal values
+     *         of field next to each other: it is an {@link OrderBy} or
+     *         {@link ExternalSort} on the field, a {@link SortMergeJoin} on an
+     *         equality of it, or a {@link Filter} of such a child
+     */
+    public static boolean isGroupedOn(DbIterator child, int field) {
+        if (child instanceof OrderBy)
+            return ((OrderBy) child).getOrderByField() == field;
+        if (child instanceof ExternalSort) {
+            Comparator<Tuple> c = ((ExternalSort) child).getComparator();
+            return c instanceof TupleComparator && ((TupleComparator) c).getField(0) == field;
+        }
+        if (child instanceof SortMergeJoin) {
+            SortMergeJoin j = (SortMergeJoin) child;
+            JoinPredicate p = j.getJoinPredicate();
+            int td1n = j.getChildren()[0].getTupleDesc().numFields();
+            return p.getOperator() == Predicate.Op.EQUALS
+                && (field == p.getField1() || field == td1n + p.getField2());
+        }
+        if (child instanceof Filter)
+            return isGroupedOn(((Filter) child).getChildren()[0], field);
+        return false;
+    }
+
+    void start() {
+        TupleDesc childTd = getChildren()[0].getTupleDesc();
+        if (groupField() == Aggregator.NO_GROUPING)
+            resultTd = new TupleDesc(new Type[] { Type.INT_TYPE });
+        else
+            resultTd = new TupleDesc(new Type[] { childTd.getFieldType(groupField()), Type.INT_TYPE });
+        pending = null;
+        done = false;
+    }
+
+    /**
+     * Returns the next group, reading the child up to the first tuple of the
+     * group after it.
+     *
+     * @see Aggregate#fetchNext
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        DbIterator child = getChildren()[0];
+        int gfield = groupField();
+        while (!done) {
+            Accumulator acc = new Accumulator();
+            Field key = null;
+            if (pending == null && child.hasNext())
+                pending = child.next();
+            if (pending == null) {
+                // only the aggregate of no grouping is returned for no tuples
+                done = true;
+                if (gfield != Aggregator.NO_GROUPING)
+                    return null;
+            } else {
+                if (gfield != Aggregator.NO_GROUPING)
+                    key = pending.getField(gfield);
+                do {
+                    add(acc, pending);
+                    pending = child.hasNext() ? child.next() : null;
+                } while (pending != null
+                        && (key == null || key.equals(pending.getField(gfield))));
+                if (gfield == Aggregator.NO_GROUPING)
+                    done = true;
+            }
+            Field value = acc.result(aggregateOp());
+            if (value == null)
+                continue;
+            Tuple t = new Tuple(resultTd);
+            if (key == null) {
+                t.setField(0, value);
+            } else {
+                t.setField(0, key);
+                t.setField(1, value);
+            }
+            return t;
+        }
+        return null;
+    }
+
+    private void add(Accumulator acc, Tuple t) {
+        Field f = t.getField(aggregateField());
+        if (f instanceof IntField)
+            acc.add(((IntField) f).getValue());
+        else
+            acc.addCount();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        getChildren()[0].rewind();
+        pending = null;
+        done = false;
+    }
+}
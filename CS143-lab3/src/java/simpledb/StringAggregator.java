@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 
 import simpledb.Aggregator.Op;
 
@@ -21,7 +22,7 @@ public class StringAggregator implements Aggregator {
      * @throws IllegalArgumentException if what != COUNT
      */
 
-    private HashMap<Field, ArrayList<Field>> groupings;
+    private HashMap<Field, Accumulator> groupings;
     
     
     private int groupField;
@@ -35,31 +36,82 @@ public class StringAggregator implements Aggregator {
         aggField = afield;
         operator = what;
         
-        groupings = new HashMap<Field, ArrayList<Field>>();
+        groupings = new HashMap<Field, Accumulator>();
         if(groupField == Aggregator.NO_GROUPING){
-        	groupings.put(new IntField(Aggregator.NO_GROUPING), new ArrayList<Field>());
+        	groupings.put(new IntField(Aggregator.NO_GROUPING), new Accumulator());
         }
     }
 
     /**
-     * Merge a new tuple into the aggregate, grouping as indicated in the constructor
+     * Merge a new tuple into the aggregate, grouping as indicated in the constructor.
+     * Only the running count of each group is kept, not the strings themselves.
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-    	if(groupField == Aggregator.NO_GROUPING){
-        	groupings.get(new IntField(Aggregator.NO_GROUPING)).add(tup.getField(aggField));
+        Field key = groupField == Aggregator.NO_GROUPING
+            ? new IntField(Aggregator.NO_GROUPING) : tup.getField(groupField);
+        Accumulator acc = groupings.get(key);
+        if(acc == null){
+        	acc = new Accumulator();
+        	groupings.put(key, acc);
         }
-        else{
-        	if(groupings.containsKey(tup.getField(groupField))){
-        		groupings.get(tup.getField(groupField)).add(tup.getField(aggField));
-        	}
-        	else{
-        		groupings.put(tup.getField(groupField), new ArrayList<Field>());
-        		groupings.get(tup.getField(groupField)).add(tup.getField(aggField));
-        	}
+        acc.addCount();
+    }
+
+    /**
+     * Merge the tuples of a batch. Consecutive tuples of one group are
+     * merged with one lookup.
+     */
+    public void mergeBatchIntoGroups(TupleBatch batch) {
+        int[] sel = batch.getSelection();
+        // the group of the last tuple; an INT_TYPE group value is compared
+        // on the int vector, without creating a Field for every tuple
+        int[] intKeys = groupField != Aggregator.NO_GROUPING && groupFieldType == Type.INT_TYPE
+            ? batch.getInts(groupField) : null;
+        Field key = null;
+        Accumulator acc = null;
+        if(groupField == Aggregator.NO_GROUPING)
+            acc = groupings.get(new IntField(Aggregator.NO_GROUPING));
+        for(int i = 0; i < batch.size(); i++){
+            int r = sel[i];
+            if(groupField != Aggregator.NO_GROUPING){
+                boolean same = key != null && (intKeys != null
+                    ? ((IntField) key).getValue() == intKeys[r]
+                    : key.equals(batch.getField(groupField, r)));
+                if(!same){
+                    key = batch.getField(groupField, r);
+                    acc = groupings.get(key);
+                    if(acc == null){
+                        acc = new Accumulator();
+                        groupings.put(key, acc);
+                    }
+                }
+            }
+            acc.addCount();
         }
     }
 
+    public int getGroupCount() {
+        return groupings.size();
+    }
+
+    public void merge(Aggregator other) {
+        for(Map.Entry<Field, Accumulator> group : ((StringAggregator) other).groupings.entrySet()){
+            Accumulator acc = groupings.get(group.getKey());
+            if(acc == null){
+                acc = new Accumulator();
+                groupings.put(group.getKey(), acc);
+            }
+            acc.merge(group.getValue());
+        }
+    }
+
+    public boolean hasGroup(Field groupValue) {
+        if(groupField == Aggregator.NO_GROUPING)
+            return true;
+        return groupings.containsKey(groupValue);
+    }
+
     /**
      * Create a DbIterator over group aggregate results.
      *
@@ -73,35 +125,24 @@ public class StringAggregator implements Aggregator {
     	TupleDesc resultDesc;
     	if(groupField == Aggregator.NO_GROUPING){
         	resultDesc = new TupleDesc(new Type[]{Type.INT_TYPE});
-        	Tuple resultTup = new Tuple(resultDesc);
-        	switch(operator){
-	    		case COUNT:
-	    			int count = groupings.get(new IntField(Aggregator.NO_GROUPING)).size();
-	    			resultTup.setField(0, new IntField(count));
-	    			resultTuples.add(resultTup);
-	    			break;
-	    		default:
-	    			break;
+        	if(operator == Op.COUNT){
+        		Tuple resultTup = new Tuple(resultDesc);
+        		resultTup.setField(0, groupings.get(new IntField(Aggregator.NO_GROUPING)).result(operator));
+        		resultTuples.add(resultTup);
         	}
-        	return new TupleIterator(resultDesc, resultTuples);
     	}
     	else{
     		resultDesc = new TupleDesc(new Type[]{groupFieldType, Type.INT_TYPE});
-    		for(Field key : groupings.keySet()){
-    			Tuple resultTup = new Tuple(resultDesc);
-    			switch(operator){
-		    		case COUNT:
-		    			int count = groupings.get(key).size();
-		    			resultTup.setField(0, key);
-		    			resultTup.setField(1, new IntField(count));
-		    			resultTuples.add(resultTup);
-		    			break;
-		    		default:
-		    			break;
-    			}
-        	}
-    		return new TupleIterator(resultDesc, resultTuples);
+    		if(operator == Op.COUNT){
+	    		for(Map.Entry<Field, Accumulator> group : groupings.entrySet()){
+	    			Tuple resultTup = new Tuple(resultDesc);
+	    			resultTup.setField(0, group.getKey());
+	    			resultTup.setField(1, group.getValue().result(operator));
+	    			resultTuples.add(resultTup);
+	        	}
+    		}
     	}
+    	return new TupleIterator(resultDesc, resultTuples);
     }
 
 }
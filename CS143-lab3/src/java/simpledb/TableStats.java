@@ -235,6 +235,19 @@ public class TableStats {
     	}
     }
 
+    /**
+     * @return an upper bound on the number of distinct values of field: the
+     *         number of tuples, or for an INT_TYPE field the width of its
+     *         range if that is smaller
+     */
+    public int estimateDistinctValues(int field) {
+    	long n = (long) numTuples;
+    	if(desc.getFieldType(field) == Type.INT_TYPE && minValue.get(field) != null){
+    		n = Math.min(n, (long) maxValue.get(field) - minValue.get(field) + 1);
+    	}
+    	return (int) n;
+    }
+
     /**
      * return the total number of tuples in this table
      * */
@@ -0,0 +1,147 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * TopK is an operator that implements ORDER BY with a LIMIT of k tuples. It
+ * reads its child once, keeping the best k tuples seen so far in a bounded
+ * heap whose root is the worst of them, so it holds k tuples rather than the
+ * whole child and does O(n log k) comparisons rather than O(n log n). Tuples
+ * with equal keys are kept in the order of the child, as {@link OrderBy}
+ * followed by {@link Limit} would return them.
+ */
+public class TopK extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Initial capacity of the heap, which grows up to k tuples. */
+    static final int INITIAL_CAPACITY = 1024;
+
+    private DbIterator child;
+    private final int orderByField;
+    private final boolean asc;
+    private final int k;
+
+    private transient ArrayList<Tuple> top;
+    private transient Iterator<Tuple> it;
+
+    /** A tuple and its position in the child, to break ties by. */
+    private static class Entry {
+        final Tuple tuple;
+        final long seq;
+
+        Entry(Tuple tuple, long seq) {
+            this.tuple = tuple;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Creates a new TopK node over the tuples from the iterator.
+     *
+     * @param orderbyField
+     *            the field to which the sort is applied.
+     * @param asc
+     *            true if the sort order is ascending.
+     * @param k
+     *            the number of tuples to return
+     * @param child
+     *            the tuples to sort.
+     * @throws IllegalArgumentException if k is negative
+     */
+    public TopK(int orderbyField, boolean asc, int k, DbIterator child) {
+        if (k < 0)
+            throw new IllegalArgumentException("negative limit " + k);
+        this.orderByField = orderbyField;
+        this.asc = asc;
+        this.k = k;
+        this.child = child;
+    }
+
+    public boolean isASC() {
+        return asc;
+    }
+
+    public int getOrderByField() {
+        return orderByField;
+    }
+
+    /** @return the maximum number of tuples returned */
+    public int getLimit() {
+        return k;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        final TupleComparator tc = new TupleComparator(child.getTupleDesc(), orderByField, asc);
+        Comparator<Entry> order = new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                int c = tc.compare(e1.tuple, e2.tuple);
+                if (c != 0)
+                    return c;
+                return e1.seq < e2.seq ? -1 : (e1.seq == e2.seq ? 0 : 1);
+            }
+        };
+        // the worst of the best k at the root; the heap starts small and
+        // grows, so a large k over a small child allocates little
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>(
+                Math.max(1, Math.min(k, INITIAL_CAPACITY)), Collections.reverseOrder(order));
+        long seq = 0;
+        while (child.hasNext()) {
+            Entry e = new Entry(child.next(), seq++);
+            if (heap.size() < k) {
+                heap.add(e);
+            } else if (k > 0 && order.compare(e, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(e);
+            }
+        }
+        Entry[] best = heap.toArray(new Entry[heap.size()]);
+        Arrays.sort(best, order);
+        top = new ArrayList<Tuple>(best.length);
+        for (Entry e : best)
+            top.add(e.tuple);
+        it = top.iterator();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        top = null;
+        it = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        it = top.iterator();
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the best k tuples of the
+     * child in order.
+     *
+     * @return The next tuple in the ordering, or null if there are no more
+     *         tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (it != null && it.hasNext())
+            return it.next();
+        return null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child = children[0];
+    }
+}
@@ -1,6 +1,9 @@
 package simpledb;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -9,6 +12,9 @@ import java.util.Iterator;
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * A tuple read from a page may be a lazy view of the page's bytes: its fields
+ * are decoded one at a time, the first time each is asked for.
  */
 public class Tuple implements Serializable {
 
@@ -17,6 +23,9 @@ public class Tuple implements Serializable {
     private TupleDesc schema;
     private RecordId RID;
     private ArrayList<Field> fieldArray; 
+    // bytes the unset fields are decoded from, or null once materialized
+    private transient ByteBuffer source;
+    private transient int sourceOffset;
     
     /**
      * Create a new tuple with the specified schema (type).
@@ -34,6 +43,40 @@ public class Tuple implements Serializable {
         }
     }
 
+    /**
+     * Create a tuple whose fields are decoded lazily from the tuple stored at
+     * offset in buf, in the format written by {@link Field#serialize}. The
+     * bytes must not change while the tuple is in use; see
+     * {@link #materialize}.
+     */
+    Tuple(TupleDesc td, ByteBuffer buf, int offset) {
+        this(td);
+        source = buf;
+        sourceOffset = offset;
+    }
+
+    /**
+     * Decode every field that has not been read yet, so that this tuple no
+     * longer depends on the bytes it was read from.
+     */
+    void materialize() {
+        ByteBuffer buf = source;
+        if (buf == null)
+            return;
+        for (int i = 0; i < fieldArray.size(); i++) {
+            getField(i);
+        }
+        source = null;
+    }
+
+    /**
+     * @return true if this tuple is an unmodified view of the tuple stored at
+     *         offset in buf
+     */
+    boolean isViewOf(ByteBuffer buf, int offset) {
+        return source == buf && sourceOffset == offset;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -68,6 +111,8 @@ public class Tuple implements Serializable {
      *            new value for the field.
      */
     public void setField(int i, Field f) {
+        // the tuple no longer matches its source bytes
+        materialize();
         fieldArray.set(i, f);
     }
 
@@ -78,7 +123,26 @@ public class Tuple implements Serializable {
      *            field index to return. Must be a valid index.
      */
     public Field getField(int i) {
-        return fieldArray.get(i);
+        Field f = fieldArray.get(i);
+        ByteBuffer buf = source;
+        if (f == null && buf != null) {
+            f = schema.getFieldType(i).parse(buf, sourceOffset + schema.getFieldOffset(i));
+            fieldArray.set(i, f);
+        }
+        return f;
+    }
+
+    /**
+     * @return the value of the ith field, which must be of type INT_TYPE. A
+     *         field that has not been decoded is read straight from the
+     *         source bytes, without creating an IntField for it.
+     */
+    int getInt(int i) {
+        Field f = fieldArray.get(i);
+        ByteBuffer buf = source;
+        if (f == null && buf != null)
+            return buf.getInt(sourceOffset + schema.getFieldOffset(i));
+        return ((IntField) f).getValue();
     }
 
     /**
@@ -104,6 +168,7 @@ public class Tuple implements Serializable {
      * */
     public Iterator<Field> fields()
     {
+    	materialize();
     	return fieldArray.iterator();
     }
     
@@ -112,6 +177,12 @@ public class Tuple implements Serializable {
      * */
     public void resetTupleDesc(TupleDesc td)
     {
+        materialize();
         schema = null;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        materialize();
+        out.defaultWriteObject();
+    }
 }
@@ -0,0 +1,69 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * TupleAdapter returns the tuples of a {@link BatchIterator} one at a time,
+ * reading it a batch at a time, for operators that take tuples.
+ */
+public class TupleAdapter extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private BatchIterator child;
+    private transient TupleBatch batch;
+    // the next tuple of batch to return
+    private transient int index;
+
+    /**
+     * Constructor.
+     *
+     * @param child
+     *            the iterator to read batches from
+     */
+    public TupleAdapter(BatchIterator child) {
+        this.child = child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        batch = null;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        batch = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        batch = null;
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        while (batch == null || index == batch.size()) {
+            batch = child.nextBatch();
+            index = 0;
+            if (batch == null)
+                return null;
+        }
+        return batch.getTuple(index++);
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        child = BatchAdapter.of(children[0]);
+    }
+}
@@ -0,0 +1,222 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * TupleBatch holds up to a fixed number of tuples of one schema by column,
+ * for operators that exchange tuples a batch at a time through a
+ * {@link BatchIterator}. The values of an {@link Type#INT_TYPE} column are
+ * kept in an int[] vector, those of other columns in a Field[] vector; row r
+ * of the batch is element r of every vector.
+ * <p>
+ * A selection vector lists the rows of the batch that are part of it, in
+ * increasing order. Rows are selected when they are added; a filter narrows
+ * the selection in place rather than copying the rows that pass. The tuples
+ * of a batch are its selected rows: {@link #size} counts them, and
+ * {@link #getTuple(int)} builds the ith of them.
+ * <p>
+ * Tuples built from a batch have no RecordId.
+ */
+public class TupleBatch {
+
+    /** Default number of rows a batch holds. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final TupleDesc td;
+    private final int capacity;
+    // ints[c] holds column c if it is an INT_TYPE column, fields[c] otherwise
+    private final int[][] ints;
+    private final Field[][] fields;
+    private final int[] offsets;
+    // the rows added, and the first size entries of selection are selected
+    private int rows;
+    private int[] selection;
+    private int size;
+
+    /**
+     * Create an empty batch of {@link #DEFAULT_CAPACITY} rows.
+     *
+     * @param td the schema of the tuples of the batch
+     */
+    public TupleBatch(TupleDesc td) {
+        this(td, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty batch.
+     *
+     * @param td the schema of the tuples of the batch
+     * @param capacity the number of rows the batch holds
+     */
+    public TupleBatch(TupleDesc td, int capacity) {
+        this.td = td;
+        this.capacity = Math.max(1, capacity);
+        int n = td.numFields();
+        ints = new int[n][];
+        fields = new Field[n][];
+        offsets = new int[n];
+        for (int c = 0; c < n; c++) {
+            if (td.getFieldType(c) == Type.INT_TYPE)
+                ints[c] = new int[this.capacity];
+            else
+                fields[c] = new Field[this.capacity];
+            offsets[c] = td.getFieldOffset(c);
+        }
+        selection = new int[this.capacity];
+    }
+
+    /** A batch of columns of source, sharing its vectors and selection. */
+    private TupleBatch(TupleDesc td, TupleBatch source, int[] columns) {
+        this.td = td;
+        capacity = source.capacity;
+        ints = new int[columns.length][];
+        fields = new Field[columns.length][];
+        offsets = null;
+        for (int c = 0; c < columns.length; c++) {
+            ints[c] = source.ints[columns[c]];
+            fields[c] = source.fields[columns[c]];
+        }
+        rows = source.rows;
+        selection = source.selection;
+        size = source.size;
+    }
+
+    /** @return the schema of the tuples of this batch */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the number of rows this batch holds */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** @return the number of rows added since the batch was cleared */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /** @return true if no more rows can be added */
+    public boolean isFull() {
+        return rows == capacity;
+    }
+
+    /** @return the number of selected rows, the tuples of this batch */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the selection vector: its first {@link #size} entries are the
+     *         selected rows, in increasing order. It may be narrowed in place,
+     *         followed by a call to {@link #setSize}.
+     */
+    public int[] getSelection() {
+        return selection;
+    }
+
+    /**
+     * Keep only the first n entries of the selection vector selected.
+     *
+     * @throws IllegalArgumentException if more rows are selected than now
+     */
+    public void setSize(int n) {
+        if (n < 0 || n > size)
+            throw new IllegalArgumentException("cannot select " + n + " of " + size + " rows");
+        size = n;
+    }
+
+    /** Remove every row. */
+    public void clear() {
+        rows = 0;
+        size = 0;
+    }
+
+    /**
+     * @return the vector of column c, which must be of type INT_TYPE
+     */
+    public int[] getInts(int c) {
+        if (ints[c] == null)
+            throw new IllegalArgumentException("column " + c + " is not an INT_TYPE column");
+        return ints[c];
+    }
+
+    /** @return the value of column c in row r */
+    public Field getField(int c, int r) {
+        return ints[c] != null ? new IntField(ints[c][r]) : fields[c][r];
+    }
+
+    /** @return the ith tuple of this batch, which is row getSelection()[i] */
+    public Tuple getTuple(int i) {
+        int r = selection[i];
+        Tuple t = new Tuple(td);
+        for (int c = 0; c < ints.length; c++)
+            t.setField(c, getField(c, r));
+        return t;
+    }
+
+    /**
+     * Append an empty row and select it; its columns must then be set.
+     *
+     * @return the new row
+     * @throws IllegalStateException if the batch is full
+     */
+    int addRow() {
+        if (rows == capacity)
+            throw new IllegalStateException("batch is full");
+        selection[size++] = rows;
+        return rows++;
+    }
+
+    /**
+     * Append a row holding the values of t and select it.
+     *
+     * @throws IllegalStateException if the batch is full
+     */
+    public void addTuple(Tuple t) {
+        int r = addRow();
+        for (int c = 0; c < ints.length; c++)
+            set(c, r, t, c);
+    }
+
+    /**
+     * Append a row holding the tuple stored at offset in buf, in the format
+     * of a tuple of a {@link HeapPage}, and select it.
+     */
+    void addRow(ByteBuffer buf, int offset) {
+        int r = addRow();
+        for (int c = 0; c < ints.length; c++) {
+            if (ints[c] != null)
+                ints[c][r] = buf.getInt(offset + offsets[c]);
+            else
+                fields[c][r] = td.getFieldType(c).parse(buf, offset + offsets[c]);
+        }
+    }
+
+    /** Set column c of row r to field f of t. */
+    void set(int c, int r, Tuple t, int f) {
+        if (ints[c] != null)
+            ints[c][r] = t.getInt(f);
+        else
+            fields[c][r] = t.getField(f);
+    }
+
+    /** Set column c of row r to column sc of row sr of source. */
+    void set(int c, int r, TupleBatch source, int sc, int sr) {
+        if (ints[c] != null)
+            ints[c][r] = source.ints[sc][sr];
+        else
+            fields[c][r] = source.getField(sc, sr);
+    }
+
+    /**
+     * @return a batch of the columns of this batch, in that order, that
+     *         shares the vectors and the selection of this batch; it is only
+     *         valid until this batch changes
+     * @param td the schema of the columns
+     * @param columns the columns of this batch that make up the new batch
+     */
+    public TupleBatch project(TupleDesc td, int[] columns) {
+        return new TupleBatch(td, this, columns);
+    }
+}
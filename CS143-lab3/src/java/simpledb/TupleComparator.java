@@ -0,0 +1,128 @@
+package simpledb;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * TupleComparator orders tuples by one or more sort keys, each a field and a
+ * direction; later keys break the ties of earlier ones. Each key is compared
+ * with a single three-way comparison specialized to the type of its field,
+ * rather than through {@link Field#compare} and a {@link Predicate.Op}.
+ * <p>
+ * The types of the keys are taken from a TupleDesc when one is given; the
+ * single-key constructor without one looks at the fields it compares.
+ */
+public class TupleComparator implements Comparator<Tuple>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Three-way comparison of two fields of one type. */
+    enum KeyType {
+        INT {
+            int compare(Field a, Field b) {
+                int x = ((IntField) a).getValue();
+                int y = ((IntField) b).getValue();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        },
+        STRING {
+            int compare(Field a, Field b) {
+                return ((StringField) a).getValue().compareTo(((StringField) b).getValue());
+            }
+        },
+        ANY {
+            int compare(Field a, Field b) {
+                return a instanceof IntField ? INT.compare(a, b) : STRING.compare(a, b);
+            }
+        };
+
+        /**
+         * @return a negative number, zero or a positive number as a is less
+         *         than, equal to or greater than b
+         */
+        abstract int compare(Field a, Field b);
+
+        /** @return the comparison of fields of type t, or ANY if t is null */
+        static KeyType of(Type t) {
+            if (t == Type.INT_TYPE)
+                return INT;
+            if (t == Type.STRING_TYPE)
+                return STRING;
+            return ANY;
+        }
+    }
+
+    private final int[] fields;
+    private final boolean[] asc;
+    private final KeyType[] types;
+
+    /**
+     * Order by a single field, whose type is looked up on each comparison.
+     *
+     * @param field the field to order by
+     * @param asc true for ascending order
+     */
+    public TupleComparator(int field, boolean asc) {
+        this(null, new int[] { field }, new boolean[] { asc });
+    }
+
+    /**
+     * Order by a single field of tuples of td.
+     *
+     * @param td the schema of the tuples compared
+     * @param field the field to order by
+     * @param asc true for ascending order
+     */
+    public TupleComparator(TupleDesc td, int field, boolean asc) {
+        this(td, new int[] { field }, new boolean[] { asc });
+    }
+
+    /**
+     * Order by several fields of tuples of td.
+     *
+     * @param td the schema of the tuples compared, or null to look up the
+     *            types of the fields on each comparison
+     * @param fields the fields to order by, most significant first
+     * @param asc for each field, true for ascending order
+     * @throws IllegalArgumentException if there are no fields, or fields and
+     *             asc differ in length
+     */
+    public TupleComparator(TupleDesc td, int[] fields, boolean[] asc) {
+        if (fields.length == 0 || fields.length != asc.length)
+            throw new IllegalArgumentException("need one direction per sort key");
+        this.fields = fields.clone();
+        this.asc = asc.clone();
+        types = new KeyType[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            types[i] = KeyType.of(td == null ? null : td.getFieldType(fields[i]));
+    }
+
+    /** @return the number of sort keys */
+    public int getKeyCount() {
+        return fields.length;
+    }
+
+    /** @return the field of sort key i */
+    public int getField(int i) {
+        return fields[i];
+    }
+
+    /** @return true if sort key i is in ascending order */
+    public boolean isAscending(int i) {
+        return asc[i];
+    }
+
+    /** @return the comparison used for sort key i */
+    KeyType getKeyType(int i) {
+        return types[i];
+    }
+
+    public int compare(Tuple t1, Tuple t2) {
+        for (int i = 0; i < fields.length; i++) {
+            int c = types[i].compare(t1.getField(fields[i]), t2.getField(fields[i]));
+            if (c != 0)
+                return asc[i] ? c : -c;
+        }
+        return 0;
+    }
+}
@@ -35,6 +35,8 @@ public class TupleDesc implements Serializable {
         }
     }
     private ArrayList<TDItem> TDItemArray;
+    // field offsets within a stored tuple, computed on first use
+    private transient int[] offsets;
     /**
      * @return
      *        An iterator which iterates over all the field TDItems
@@ -156,6 +158,24 @@ public class TupleDesc implements Serializable {
         return size;
     }
 
+    /**
+     * @return the offset, in bytes, of the ith field from the start of a
+     *         tuple of this TupleDesc as it is stored on a page.
+     * @param i
+     *            index of the field. It must be a valid index.
+     */
+    public int getFieldOffset(int i) {
+        int[] o = offsets;
+        if (o == null) {
+            o = new int[TDItemArray.size()];
+            for (int j = 1; j < o.length; j++) {
+                o[j] = o[j - 1] + TDItemArray.get(j - 1).fieldType.getLen();
+            }
+            offsets = o;
+        }
+        return o[i];
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
@@ -0,0 +1,78 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class AccumulatorTest extends SimpleDbTestBase {
+
+  /**
+   * Unit test for Accumulator.result() for each aggregate
+   */
+  @Test public void results() {
+    Accumulator acc = new Accumulator();
+    acc.add(4);
+    acc.add(-2);
+    acc.add(7);
+    assertEquals(new IntField(-2), acc.result(Aggregator.Op.MIN));
+    assertEquals(new IntField(7), acc.result(Aggregator.Op.MAX));
+    assertEquals(new IntField(9), acc.result(Aggregator.Op.SUM));
+    assertEquals(new IntField(3), acc.result(Aggregator.Op.AVG));
+    assertEquals(new IntField(3), acc.result(Aggregator.Op.COUNT));
+    assertNull(acc.result(Aggregator.Op.SC_AVG));
+  }
+
+  /**
+   * Unit test for an Accumulator whose sum exceeds an int
+   */
+  @Test public void longSum() {
+    Accumulator acc = new Accumulator();
+    for (int i = 0; i < 4; i++)
+      acc.add(Integer.MAX_VALUE);
+    assertEquals(4L * Integer.MAX_VALUE, acc.getSum());
+    assertEquals(new IntField(Integer.MAX_VALUE), acc.result(Aggregator.Op.AVG));
+  }
+
+  /**
+   * Unit test for an Accumulator that only counts
+   */
+  @Test public void countOnly() {
+    Accumulator acc = new Accumulator();
+    acc.addCount();
+    acc.addCount();
+    assertEquals(2, acc.getCount());
+    assertEquals(new IntField(2), acc.result(Aggregator.Op.COUNT));
+    assertEquals(new IntField(0), new Accumulator().result(Aggregator.Op.AVG));
+  }
+
+  /**
+   * Unit test for Accumulator.merge() against adding every value to one
+   * accumulator
+   */
+  @Test public void merge() {
+    Accumulator all = new Accumulator();
+    Accumulator left = new Accumulator();
+    Accumulator right = new Accumulator();
+    for (int i = -5; i < 10; i++) {
+      all.add(i * 3);
+      (i % 2 == 0 ? left : right).add(i * 3);
+    }
+    left.merge(right);
+    left.merge(new Accumulator());
+    for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.MIN,
+        Aggregator.Op.MAX, Aggregator.Op.SUM, Aggregator.Op.AVG,
+        Aggregator.Op.COUNT })
+      assertEquals(all.result(op), left.result(op));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(AccumulatorTest.class);
+  }
+}
@@ -3,6 +3,10 @@ package simpledb;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Before;
@@ -176,6 +180,37 @@ public class AggregateTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(min, op);
   }
 
+  /**
+   * Unit test for an Aggregate whose groups do not fit in memory, compared
+   * with one whose groups do, before and after a rewind
+   */
+  @Test public void spilledAggregate() throws Exception {
+    int[] values = new int[2 * 3000];
+    Random r = new Random(values.length);
+    for (int i = 0; i < values.length; i += 2) {
+      values[i] = i / 2 % 1000;
+      values[i + 1] = r.nextInt(100);
+    }
+    for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.SUM,
+        Aggregator.Op.AVG, Aggregator.Op.COUNT }) {
+      Aggregate expected = new Aggregate(TestUtil.createTupleList(width1, values), 1, 0, op);
+      // room for 20 groups: partitions are split again
+      Aggregate actual = new Aggregate(TestUtil.createTupleList(width1, values), 1, 0, op,
+          20 * (Type.INT_TYPE.getLen() + Aggregate.GROUP_OVERHEAD));
+      assertEquals(20, actual.getGroupCapacity());
+      expected.open();
+      ArrayList<String> rows = TestUtil.drain(expected);
+      expected.close();
+      assertEquals(1000, rows.size());
+      actual.open();
+      assertTrue(actual.getSpilledPartitionCount() > 0);
+      assertEquals(rows, TestUtil.drain(actual));
+      actual.rewind();
+      assertEquals(rows, TestUtil.drain(actual));
+      actual.close();
+    }
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,123 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BatchIteratorTest extends SimpleDbTestBase {
+
+  // enough rows for several pages and several batches
+  int rows = 5000;
+  int maxValue = 200;
+  HeapFile file;
+  ArrayList<ArrayList<Integer>> tuples;
+  TransactionId tid;
+
+  @Before public void createFile() throws Exception {
+    tuples = new ArrayList<ArrayList<Integer>>();
+    file = SystemTestUtil.createRandomHeapFile(2, rows, maxValue,
+        new HashMap<Integer, Integer>(), tuples);
+    tid = new TransactionId();
+  }
+
+  private SeqScan scan() {
+    return new SeqScan(tid, file.getId(), "t");
+  }
+
+  /**
+   * Unit test for SeqScan.nextBatch(), which copies tuples from the pages
+   */
+  @Test public void seqScan() throws Exception {
+    SeqScan scan = scan();
+    scan.open();
+    int n = 0;
+    for (TupleBatch b = scan.nextBatch(); b != null; b = scan.nextBatch()) {
+      assertEquals(n + b.size() < rows ? TupleBatch.DEFAULT_CAPACITY : rows - n, b.size());
+      n += b.size();
+    }
+    assertEquals(rows, n);
+    assertNull(scan.nextBatch());
+    scan.close();
+    SystemTestUtil.matchTuples(new TupleAdapter(scan()), tuples);
+  }
+
+  /**
+   * Unit test for Filter.nextBatch() and Project.nextBatch()
+   */
+  @Test public void filterAndProject() throws Exception {
+    ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+    for (ArrayList<Integer> t : tuples)
+      if (t.get(0) < maxValue / 4)
+        expected.add(new ArrayList<Integer>(Arrays.asList(t.get(1), t.get(0))));
+    Filter filter = new Filter(
+        new Predicate(0, Predicate.Op.LESS_THAN, new IntField(maxValue / 4)), scan());
+    ArrayList<Integer> fields = new ArrayList<Integer>(Arrays.asList(1, 0));
+    Project project = new Project(fields, new Type[] { Type.INT_TYPE, Type.INT_TYPE }, filter);
+    SystemTestUtil.matchTuples(new TupleAdapter(project), expected);
+  }
+
+  /**
+   * Unit test for Aggregate.nextBatch(), and for the batched merge of its
+   * child both in memory and with groups spilled
+   */
+  @Test public void aggregate() throws Exception {
+    HashMap<Integer, Integer> sums = new HashMap<Integer, Integer>();
+    for (ArrayList<Integer> t : tuples) {
+      Integer sum = sums.get(t.get(0));
+      sums.put(t.get(0), (sum == null ? 0 : sum) + t.get(1));
+    }
+    ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+    for (Integer key : sums.keySet())
+      expected.add(new ArrayList<Integer>(Arrays.asList(key, sums.get(key))));
+
+    SystemTestUtil.matchTuples(new TupleAdapter(
+        new Aggregate(scan(), 1, 0, Aggregator.Op.SUM)), expected);
+    int budget = 20 * (Type.INT_TYPE.getLen() + Aggregate.GROUP_OVERHEAD);
+    Aggregate spilled = new Aggregate(scan(), 1, 0, Aggregator.Op.SUM, budget);
+    SystemTestUtil.matchTuples(new TupleAdapter(spilled), expected);
+  }
+
+  /**
+   * Unit test for HashEquiJoin.nextBatch(), probing the hash table with
+   * batches when it fits and falling back to tuples when it does not
+   */
+  @Test public void hashEquiJoin() throws Exception {
+    ArrayList<ArrayList<Integer>> left = new ArrayList<ArrayList<Integer>>();
+    HeapFile leftFile = SystemTestUtil.createRandomHeapFile(2, 300, maxValue,
+        new HashMap<Integer, Integer>(), left);
+    ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+    for (ArrayList<Integer> l : left) {
+      for (ArrayList<Integer> r : tuples) {
+        if (l.get(0).equals(r.get(1))) {
+          ArrayList<Integer> t = new ArrayList<Integer>(l);
+          t.addAll(r);
+          expected.add(t);
+        }
+      }
+    }
+    JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 1);
+    HashEquiJoin join = new HashEquiJoin(p, new SeqScan(tid, leftFile.getId(), "l"), scan());
+    SystemTestUtil.matchTuples(new TupleAdapter(join), expected);
+    HashEquiJoin spilled = new HashEquiJoin(p, new SeqScan(tid, leftFile.getId(), "l"), scan(),
+        40 * leftFile.getTupleDesc().getSize());
+    SystemTestUtil.matchTuples(new TupleAdapter(spilled), expected);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BatchIteratorTest.class);
+  }
+}
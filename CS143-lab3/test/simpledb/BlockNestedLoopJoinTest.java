@@ -0,0 +1,155 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BlockNestedLoopJoinTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int width2 = 3;
+  DbIterator scan1;
+  DbIterator scan2;
+  DbIterator eqJoin;
+  DbIterator gtJoin;
+
+  /** Budget that fits exactly three tuples of scan1. */
+  int threeTuples;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    3, 4,
+                    5, 6,
+                    7, 8 });
+    this.scan2 = TestUtil.createTupleList(width2,
+        new int[] { 1, 2, 3,
+                    2, 3, 4,
+                    3, 4, 5,
+                    4, 5, 6,
+                    5, 6, 7 });
+    this.eqJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 1, 2, 1, 2, 3,
+                    3, 4, 3, 4, 5,
+                    5, 6, 5, 6, 7 });
+    this.gtJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] {
+                    3, 4, 1, 2, 3, // 1, 2 < 3
+                    3, 4, 2, 3, 4,
+                    5, 6, 1, 2, 3, // 1, 2, 3, 4 < 5
+                    5, 6, 2, 3, 4,
+                    5, 6, 3, 4, 5,
+                    5, 6, 4, 5, 6,
+                    7, 8, 1, 2, 3, // 1, 2, 3, 4, 5 < 7
+                    7, 8, 2, 3, 4,
+                    7, 8, 3, 4, 5,
+                    7, 8, 4, 5, 6,
+                    7, 8, 5, 6, 7 });
+    this.threeTuples = 3 * Utility.getTupleDesc(width1).getSize();
+  }
+
+  /**
+   * Unit test for BlockNestedLoopJoin.getBlockTuples()
+   */
+  @Test public void getBlockTuples() {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    assertEquals(3, new BlockNestedLoopJoin(pred, scan1, scan2, threeTuples).getBlockTuples());
+    assertEquals(1, new BlockNestedLoopJoin(pred, scan1, scan2, 0).getBlockTuples());
+  }
+
+  /**
+   * Unit test for BlockNestedLoopJoin.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    Join op = new BlockNestedLoopJoin(pred, scan1, scan2, threeTuples);
+    op.open();
+    while (op.hasNext()) {
+      assertNotNull(op.next());
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    op.rewind();
+
+    eqJoin.open();
+    Tuple expected = eqJoin.next();
+    Tuple actual = op.next();
+    assertTrue(TestUtil.compareTuples(expected, actual));
+  }
+
+  /**
+   * Unit test for BlockNestedLoopJoin.getNext() using a &gt; predicate, with
+   * blocks of one tuple, of three tuples and of the whole outer relation
+   */
+  @Test public void gtJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+    int[] budgets = { 0, threeTuples, BlockNestedLoopJoin.DEFAULT_MEMORY_BUDGET };
+    for (int budget : budgets) {
+      Join op = new BlockNestedLoopJoin(pred, scan1, scan2, budget);
+      op.open();
+      gtJoin.open();
+      TestUtil.matchAllTuples(gtJoin, op);
+      op.close();
+      gtJoin.close();
+    }
+  }
+
+  /**
+   * Unit test for BlockNestedLoopJoin.getNext() using an = predicate
+   */
+  @Test public void eqJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    Join op = new BlockNestedLoopJoin(pred, scan1, scan2, threeTuples);
+    op.open();
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+  }
+
+  /**
+   * Unit test that the inner child is scanned once per block of outer tuples
+   */
+  @Test public void innerScannedOncePerBlock() throws Exception {
+    final int[] rewinds = new int[1];
+    TupleIterator inner = new TupleIterator(scan2.getTupleDesc(), listOf(scan2)) {
+      private static final long serialVersionUID = 1L;
+      public void rewind() {
+        rewinds[0]++;
+        super.rewind();
+      }
+    };
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+    Join op = new BlockNestedLoopJoin(pred, scan1, inner, threeTuples);
+    op.open();
+    while (op.hasNext())
+      op.next();
+    // four outer tuples make two blocks
+    assertEquals(1, rewinds[0]);
+  }
+
+  private static ArrayList<Tuple> listOf(DbIterator it) throws Exception {
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    it.open();
+    while (it.hasNext())
+      tuples.add(it.next());
+    it.close();
+    return tuples;
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BlockNestedLoopJoinTest.class);
+  }
+}
@@ -0,0 +1,136 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private PageId p1, p2, p3, p4;
+
+    private static final EvictionPolicy.Filter ANY = new EvictionPolicy.Filter() {
+        public boolean canEvict(PageId pid) {
+            return true;
+        }
+    };
+
+    @Before public void createPageIds() {
+        p1 = new HeapPageId(1, 1);
+        p2 = new HeapPageId(1, 2);
+        p3 = new HeapPageId(1, 3);
+        p4 = new HeapPageId(1, 4);
+    }
+
+    /**
+     * LRU evicts the page whose last access is oldest.
+     */
+    @Test public void lru() {
+        EvictionPolicy policy = new LruEvictionPolicy();
+        policy.pageAdded(p1);
+        policy.pageAdded(p2);
+        policy.pageAdded(p3);
+        policy.pageAccessed(p1);
+        assertEquals(p2, policy.chooseVictim(ANY));
+        policy.pageRemoved(p2);
+        assertEquals(p3, policy.chooseVictim(ANY));
+    }
+
+    /**
+     * CLOCK gives referenced pages a second chance.
+     */
+    @Test public void clock() {
+        EvictionPolicy policy = new ClockEvictionPolicy();
+        policy.pageAdded(p1);
+        policy.pageAdded(p2);
+        policy.pageAdded(p3);
+        // first sweep clears all reference bits, second stops at p1
+        assertEquals(p1, policy.chooseVictim(ANY));
+        policy.pageRemoved(p1);
+        policy.pageAdded(p4);
+        policy.pageAccessed(p2);
+        assertEquals(p3, policy.chooseVictim(ANY));
+    }
+
+    /**
+     * LRU-2 evicts pages seen only once before pages seen twice.
+     */
+    @Test public void lruK() {
+        EvictionPolicy policy = new LruKEvictionPolicy(2);
+        policy.pageAdded(p1);
+        policy.pageAccessed(p1);
+        policy.pageAdded(p2);
+        policy.pageAccessed(p2);
+        policy.pageAdded(p3);
+        policy.pageAccessed(p1);
+        // p3 has a single reference, even though it is the most recent one
+        assertEquals(p3, policy.chooseVictim(ANY));
+        policy.pageRemoved(p3);
+        // p2 was used last longer ago, but p1's second most recent
+        // reference is the older one
+        assertEquals(p1, policy.chooseVictim(ANY));
+    }
+
+    /**
+     * Pages rejected by the filter are never chosen.
+     */
+    @Test public void filter() {
+        EvictionPolicy.Filter notP1 = new EvictionPolicy.Filter() {
+            public boolean canEvict(PageId pid) {
+                return !pid.equals(p1);
+            }
+        };
+        EvictionPolicy[] policies = new EvictionPolicy[] {
+            new LruEvictionPolicy(), new ClockEvictionPolicy(), new LruKEvictionPolicy()
+        };
+        for (EvictionPolicy policy : policies) {
+            policy.pageAdded(p1);
+            assertNull(policy.chooseVictim(notP1));
+            policy.pageAdded(p2);
+            assertEquals(p2, policy.chooseVictim(notP1));
+        }
+    }
+
+    /**
+     * BufferPool counts hits and misses and evicts the page the policy picks.
+     */
+    @Test public void bufferPoolHitsAndMisses() throws Exception {
+        // three pages of two-int tuples
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 3 * 504, null, null);
+        assertEquals(3, hf.numPages());
+        BufferPool bp = Database.resetBufferPool(2, new LruEvictionPolicy());
+        TransactionId tid = new TransactionId();
+        PageId pid0 = new HeapPageId(hf.getId(), 0);
+        PageId pid1 = new HeapPageId(hf.getId(), 1);
+        PageId pid2 = new HeapPageId(hf.getId(), 2);
+
+        bp.getPage(tid, pid0, Permissions.READ_ONLY);
+        bp.getPage(tid, pid1, Permissions.READ_ONLY);
+        bp.getPage(tid, pid0, Permissions.READ_ONLY);
+        assertEquals(1, bp.getHitCount());
+        assertEquals(2, bp.getMissCount());
+
+        // pid1 is least recently used, so pid0 stays resident
+        bp.getPage(tid, pid2, Permissions.READ_ONLY);
+        bp.getPage(tid, pid0, Permissions.READ_ONLY);
+        assertEquals(2, bp.getHitCount());
+        assertEquals(3, bp.getMissCount());
+
+        bp.resetStatistics();
+        assertEquals(0, bp.getHitCount());
+        assertEquals(0, bp.getMissCount());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
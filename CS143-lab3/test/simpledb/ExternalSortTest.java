@@ -0,0 +1,144 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ExternalSortTest extends SimpleDbTestBase {
+
+  int width = 2;
+  DbIterator scan;
+  DbIterator ascending;
+  int tupleSize;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan = TestUtil.createTupleList(width,
+        new int[] { 5, 1,
+                    3, 1,
+                    9, 1,
+                    3, 2,
+                    1, 1,
+                    7, 1,
+                    3, 3 });
+    // equal keys keep their input order
+    this.ascending = TestUtil.createTupleList(width,
+        new int[] { 1, 1,
+                    3, 1,
+                    3, 2,
+                    3, 3,
+                    5, 1,
+                    7, 1,
+                    9, 1 });
+    this.tupleSize = Utility.getTupleDesc(width).getSize();
+  }
+
+  /**
+   * Unit test for ExternalSort on an input that fits in memory
+   */
+  @Test public void sortInMemory() throws Exception {
+    ExternalSort op = new ExternalSort(new TupleComparator(0, true), scan);
+    op.open();
+    assertEquals(0, op.getRunCount());
+    TestUtil.compareDbIterators(ascending, op);
+  }
+
+  /**
+   * Unit test for ExternalSort on an input that is spilled in runs of two
+   * tuples
+   */
+  @Test public void sortSpilled() throws Exception {
+    ExternalSort op = new ExternalSort(new TupleComparator(0, true), scan, 2 * tupleSize);
+    op.open();
+    assertEquals(4, op.getRunCount());
+    TestUtil.compareDbIterators(ascending, op);
+  }
+
+  /**
+   * Unit test for ExternalSort.rewind() on spilled runs
+   */
+  @Test public void rewind() throws Exception {
+    ExternalSort op = new ExternalSort(new TupleComparator(0, true), scan, 3 * tupleSize);
+    op.open();
+    for (int i = 0; i < 4; i++)
+      op.next();
+    op.rewind();
+    TestUtil.compareDbIterators(ascending, op);
+  }
+
+  /**
+   * Unit test for a descending ExternalSort
+   */
+  @Test public void descending() throws Exception {
+    ExternalSort op = new ExternalSort(new TupleComparator(0, false), scan, 2 * tupleSize);
+    op.open();
+    int last = Integer.MAX_VALUE;
+    int count = 0;
+    while (op.hasNext()) {
+      int v = ((IntField) op.next().getField(0)).getValue();
+      assertTrue(v <= last);
+      last = v;
+      count++;
+    }
+    assertEquals(7, count);
+  }
+
+  /**
+   * Unit test that closing an ExternalSort removes its runs
+   */
+  @Test public void closeDeletesRuns() throws Exception {
+    ExternalSort op = new ExternalSort(new TupleComparator(0, true), scan, 2 * tupleSize);
+    op.open();
+    op.close();
+    assertEquals(0, op.getRunCount());
+  }
+
+  /**
+   * Unit test for an ExternalSort with more runs than it merges at once,
+   * whose runs are merged in several passes; equal keys must still keep
+   * their input order
+   */
+  @Test public void multiPassMerge() throws Exception {
+    int[] values = new int[width * 1000];
+    Random r = new Random(values.length);
+    for (int i = 0; i < values.length; i += width) {
+      values[i] = r.nextInt(100);
+      values[i + 1] = i;
+    }
+    ExternalSort op = new ExternalSort(new TupleComparator(0, true),
+        TestUtil.createTupleList(width, values), 10 * tupleSize);
+    op.open();
+    assertEquals(2, op.getFanIn());
+    assertEquals(100, op.getRunCount());
+    assertEquals(6, op.getMergePassCount());
+    int lastKey = -1, lastPos = -1, count = 0;
+    while (op.hasNext()) {
+      Tuple t = op.next();
+      int key = ((IntField) t.getField(0)).getValue();
+      int pos = ((IntField) t.getField(1)).getValue();
+      assertTrue(key > lastKey || (key == lastKey && pos > lastPos));
+      lastKey = key;
+      lastPos = pos;
+      count++;
+    }
+    assertEquals(1000, count);
+    op.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ExternalSortTest.class);
+  }
+}
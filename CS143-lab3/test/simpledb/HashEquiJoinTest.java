@@ -0,0 +1,178 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HashEquiJoinTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int width2 = 3;
+  DbIterator scan1;
+  DbIterator scan2;
+  DbIterator eqJoin;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    3, 4,
+                    5, 6,
+                    7, 8 });
+    this.scan2 = TestUtil.createTupleList(width2,
+        new int[] { 1, 2, 3,
+                    2, 3, 4,
+                    3, 4, 5,
+                    4, 5, 6,
+                    5, 6, 7 });
+    this.eqJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 1, 2, 1, 2, 3,
+                    3, 4, 3, 4, 5,
+                    5, 6, 5, 6, 7 });
+  }
+
+  /**
+   * Unit test for HashEquiJoin.getNext() on inputs that fit in memory
+   */
+  @Test public void eqJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin op = new HashEquiJoin(pred, scan1, scan2);
+    op.open();
+    assertEquals(0, op.getSpilledPartitionCount());
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+  }
+
+  /**
+   * Unit test for HashEquiJoin.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin op = new HashEquiJoin(pred, scan1, scan2);
+    op.open();
+    while (op.hasNext()) {
+      assertNotNull(op.next());
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    op.rewind();
+
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+  }
+
+  /**
+   * Unit test comparing a HashEquiJoin whose left child does not fit in
+   * memory with Join, before and after a rewind
+   */
+  @Test public void spilledJoin() throws Exception {
+    int[] left = randomInts(2 * 2000, 500);
+    int[] right = randomInts(3 * 1000, 500);
+    JoinPredicate pred = new JoinPredicate(1, Predicate.Op.EQUALS, 2);
+    Join expected = new Join(pred, TestUtil.createTupleList(width1, left),
+        TestUtil.createTupleList(width2, right));
+    // room for 50 tuples: partitions are split again
+    HashEquiJoin actual = new HashEquiJoin(pred, TestUtil.createTupleList(width1, left),
+        TestUtil.createTupleList(width2, right), 50 * Utility.getTupleDesc(width1).getSize());
+    ArrayList<String> rows = TestUtil.contents(expected);
+    actual.open();
+    assertTrue(actual.getSpilledPartitionCount() > 0);
+    assertEquals(rows, TestUtil.drain(actual));
+    actual.rewind();
+    assertEquals(rows, TestUtil.drain(actual));
+    actual.close();
+  }
+
+  /**
+   * Unit test for a spilled HashEquiJoin rewound before the right child has
+   * been written to the partitions in full
+   */
+  @Test public void rewindWhileSpilling() throws Exception {
+    int[] left = randomInts(2 * 2000, 500);
+    int[] right = randomInts(3 * 1000, 500);
+    JoinPredicate pred = new JoinPredicate(1, Predicate.Op.EQUALS, 2);
+    Join expected = new Join(pred, TestUtil.createTupleList(width1, left),
+        TestUtil.createTupleList(width2, right));
+    HashEquiJoin actual = new HashEquiJoin(pred, TestUtil.createTupleList(width1, left),
+        TestUtil.createTupleList(width2, right), 500 * Utility.getTupleDesc(width1).getSize());
+    ArrayList<String> rows = TestUtil.contents(expected);
+    actual.open();
+    assertTrue(actual.getSpilledPartitionCount() > 0);
+    // partition 0 stays in memory, so its matches come while the right
+    // child is being partitioned
+    for (int i = 0; i < 10; i++)
+      assertNotNull(actual.next());
+    actual.rewind();
+    assertEquals(rows, TestUtil.drain(actual));
+    actual.close();
+  }
+
+  /**
+   * Unit test for a HashEquiJoin whose left child does not fit in memory and
+   * has a single join key, so that it cannot be partitioned
+   */
+  @Test public void skewedJoin() throws Exception {
+    int[] left = new int[2 * 300];
+    int[] right = new int[3 * 20];
+    for (int i = 0; i < left.length; i += 2)
+      left[i] = 7;
+    for (int i = 0; i < right.length; i += 3)
+      right[i] = i % 2 == 0 ? 7 : i;
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin op = new HashEquiJoin(pred, TestUtil.createTupleList(width1, left),
+        TestUtil.createTupleList(width2, right), 16 * Utility.getTupleDesc(width1).getSize());
+    op.open();
+    assertEquals(300 * 10, TestUtil.drain(op).size());
+    op.close();
+  }
+
+  /**
+   * Unit test for a HashEquiJoin on string join fields, spilled to disk
+   */
+  @Test public void stringJoin() throws Exception {
+    Object[] left = new Object[2 * 200];
+    Object[] right = new Object[2 * 100];
+    for (int i = 0; i < left.length; i += 2) {
+      left[i] = "k" + (i % 50);
+      left[i + 1] = "l" + i;
+    }
+    for (int i = 0; i < right.length; i += 2) {
+      right[i] = "k" + (i % 70);
+      right[i + 1] = "r" + i;
+    }
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    Join expected = new Join(pred, TestUtil.createTupleList(2, left),
+        TestUtil.createTupleList(2, right));
+    HashEquiJoin actual = new HashEquiJoin(pred, TestUtil.createTupleList(2, left),
+        TestUtil.createTupleList(2, right), 1000);
+    ArrayList<String> rows = TestUtil.contents(expected);
+    assertTrue(rows.size() > 0);
+    assertEquals(rows, TestUtil.contents(actual));
+  }
+
+  private static int[] randomInts(int n, int range) {
+    Random r = new Random(n);
+    int[] a = new int[n];
+    for (int i = 0; i < n; i++)
+      a[i] = r.nextInt(range);
+    return a;
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HashEquiJoinTest.class);
+  }
+}
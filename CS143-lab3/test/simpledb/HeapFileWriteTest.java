@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.io.File;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +45,71 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.insertTuple() reusing space freed by a delete
+     */
+    @Test public void insertIntoFreedSlot() throws Exception {
+        Tuple first = null;
+        for (int i = 0; i < 504 * 2 + 1; ++i) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            empty.insertTuple(tid, t);
+            if (i == 0)
+                first = t;
+        }
+        assertEquals(3, empty.numPages());
+
+        empty.deleteTuple(tid, first);
+        Tuple t = Utility.getHeapTuple(-1, 2);
+        empty.insertTuple(tid, t);
+        assertEquals(0, t.getRecordId().getPageId().pageNumber());
+        assertEquals(3, empty.numPages());
+
+        // page 0 is full again, page 2 still has room
+        t = Utility.getHeapTuple(-2, 2);
+        empty.insertTuple(tid, t);
+        assertEquals(2, t.getRecordId().getPageId().pageNumber());
+    }
+
+    /**
+     * Unit test for saving and loading the free space map of a HeapFile
+     */
+    @Test public void freeSpaceMapPersists() throws Exception {
+        for (int i = 0; i < 504 + 1; ++i) {
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        empty.close();
+
+        File fsm = empty.getFreeSpaceFile();
+        fsm.deleteOnExit();
+        assertTrue(fsm.exists());
+        FreeSpaceMap map = FreeSpaceMap.load(fsm, 2);
+        assertNotNull(map);
+        assertFalse(map.hasSpace(0));
+        assertTrue(map.hasSpace(1));
+        assertEquals(1, map.nextPageWithSpace(0));
+
+        // a map saved for a different number of pages is stale
+        assertNull(FreeSpaceMap.load(fsm, 3));
+    }
+
+    /**
+     * Unit test for HeapFile.addTuple() when the free space map offers a
+     * full page: the page is skipped, and its lock is not kept
+     */
+    @Test public void staleFreeSpaceMap() throws Exception {
+        for (int i = 0; i < 504; ++i) {
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+
+        empty.getFreeSpaceMap().setHasSpace(0, true);
+        empty.insertTuple(tid, Utility.getHeapTuple(504, 2));
+        assertEquals(2, empty.numPages());
+        assertFalse(Database.getBufferPool().holdsLock(tid, new HeapPageId(empty.getId(), 0)));
+        assertTrue(Database.getBufferPool().holdsLock(tid, new HeapPageId(empty.getId(), 1)));
+    }
+
     /**
      * JUnit suite target
      */
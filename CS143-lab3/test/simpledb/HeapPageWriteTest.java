@@ -1,9 +1,12 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -126,6 +129,65 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getBeforeImage() after tuples are deleted and
+     * their slots reused
+     */
+    @Test public void beforeImage() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int free = page.getNumEmptySlots();
+        Tuple first = page.iterator().next();
+        HeapPage original = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple expected = original.iterator().next();
+
+        page.deleteTuple(first);
+        page.insertTuple(Utility.getHeapTuple(-1, 2));
+        page.insertTuple(Utility.getHeapTuple(-2, 2));
+
+        // the deleted tuple keeps its values
+        assertTrue(TestUtil.compareTuples(expected, first));
+        HeapPage before = page.getBeforeImage();
+        assertEquals(free, before.getNumEmptySlots());
+        assertTrue(TestUtil.compareTuples(expected, before.iterator().next()));
+        assertEquals(free - 1, page.getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for HeapPage.getPageData() and HeapPage.writePageData() on
+     * clean and modified pages
+     */
+    @Test public void pageData() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        assertTrue(Arrays.equals(HeapPageReadTest.EXAMPLE_DATA, page.getPageData()));
+
+        Iterator<Tuple> it = page.iterator();
+        Tuple first = it.next();
+        it.next().getField(1);
+        page.deleteTuple(first);
+        Tuple added = Utility.getHeapTuple(new int[] { 7, 8 });
+        page.insertTuple(added);
+        page.insertTuple(Utility.getHeapTuple(new int[] { 9, 10 }));
+
+        // serialize at an offset into a larger buffer
+        ByteBuffer buf = ByteBuffer.allocate(BufferPool.getPageSize() + 10);
+        buf.position(10);
+        page.writePageData(buf);
+        assertEquals(BufferPool.getPageSize() + 10, buf.position());
+        byte[] data = page.getPageData();
+        byte[] written = new byte[data.length];
+        buf.position(10);
+        buf.get(written);
+        assertTrue(Arrays.equals(data, written));
+
+        HeapPage copy = new HeapPage(pid, data);
+        assertEquals(page.getNumEmptySlots(), copy.getNumEmptySlots());
+        Iterator<Tuple> expected = page.iterator();
+        Iterator<Tuple> actual = copy.iterator();
+        while (expected.hasNext())
+            assertTrue(TestUtil.compareTuples(expected.next(), actual.next()));
+        assertFalse(actual.hasNext());
+    }
+
     /**
      * JUnit suite target
      */
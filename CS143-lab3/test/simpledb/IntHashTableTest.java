@@ -0,0 +1,88 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class IntHashTableTest extends SimpleDbTestBase {
+
+  /**
+   * Unit test for IntHashTable.find() and nextRow() on keys with several rows
+   */
+  @Test public void chains() {
+    IntHashTable table = new IntHashTable(4);
+    Tuple a = Utility.getHeapTuple(1), b = Utility.getHeapTuple(2), c = Utility.getHeapTuple(3);
+    table.add(7, a);
+    table.add(-7, b);
+    table.add(7, c);
+    assertEquals(3, table.size());
+
+    int r = table.find(7);
+    assertSame(c, table.row(r));
+    r = table.nextRow(r);
+    assertSame(a, table.row(r));
+    assertEquals(-1, table.nextRow(r));
+
+    assertSame(b, table.row(table.find(-7)));
+    assertEquals(-1, table.find(0));
+  }
+
+  /**
+   * Unit test comparing IntHashTable with a HashMap across many resizes
+   */
+  @Test public void matchesHashMap() {
+    Random rand = new Random(7);
+    IntHashTable table = new IntHashTable(0);
+    HashMap<Integer, ArrayList<Tuple>> expected = new HashMap<Integer, ArrayList<Tuple>>();
+    for (int i = 0; i < 20000; i++) {
+      // multiples of 2^16 collide in the low bits
+      int key = rand.nextBoolean() ? rand.nextInt(5000) : rand.nextInt(64) << 16;
+      Tuple t = Utility.getHeapTuple(i);
+      table.add(key, t);
+      ArrayList<Tuple> list = expected.get(key);
+      if (list == null) {
+        list = new ArrayList<Tuple>();
+        expected.put(key, list);
+      }
+      list.add(t);
+    }
+    assertEquals(20000, table.size());
+    for (Integer key : expected.keySet()) {
+      ArrayList<Tuple> list = expected.get(key);
+      int i = list.size();
+      for (int r = table.find(key); r >= 0; r = table.nextRow(r))
+        assertSame(list.get(--i), table.row(r));
+      assertEquals(0, i);
+    }
+  }
+
+  /**
+   * Unit test for IntHashTable.clear()
+   */
+  @Test public void clear() {
+    IntHashTable table = new IntHashTable(2);
+    for (int i = 0; i < 100; i++)
+      table.add(i, Utility.getHeapTuple(i));
+    table.clear();
+    assertEquals(0, table.size());
+    assertEquals(-1, table.find(5));
+    table.add(5, Utility.getHeapTuple(5));
+    assertEquals(0, table.find(5));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(IntHashTableTest.class);
+  }
+}
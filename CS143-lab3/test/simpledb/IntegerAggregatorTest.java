@@ -63,6 +63,23 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     };
   }
 
+  /**
+   * Test that AVG does not overflow when the sum of a group exceeds an int
+   */
+  @Test public void avgLargeValues() throws Exception {
+    IntegerAggregator agg = new IntegerAggregator(Aggregator.NO_GROUPING, null, 1, Aggregator.Op.AVG);
+    int big = Integer.MAX_VALUE - 10;
+    DbIterator scan = TestUtil.createTupleList(width1,
+        new int[] { 1, big,
+                    1, big,
+                    1, big });
+    while (scan.hasNext())
+      agg.mergeTupleIntoGroup(scan.next());
+    DbIterator it = agg.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(1, new int[] { big }), it);
+  }
+
   /**
    * Test IntegerAggregator.mergeTupleIntoGroup() and iterator() over a sum
    */
@@ -202,6 +202,78 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
 	         Assert.assertTrue(cardinality == 800 || cardinality == 2000);
 	}
 	
+	/**
+	 * Verify that orderJoins picks the cheapest join algorithm for each join, and that
+	 * instantiateJoin builds the chosen operator
+	 */
+	@Test public void chooseJoinAlgorithmTest() throws ParsingException {
+		TransactionId tid = new TransactionId();
+		Parser p = new Parser();
+		HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+		stats.put(tableName1, stats1);
+		stats.put(tableName2, stats2);
+		HashMap<String, Double> filterSelectivities = new HashMap<String, Double>();
+		filterSelectivities.put("t1", 1.0);
+		filterSelectivities.put("t2", 1.0);
+
+		// an equality join is hashed, on several threads if there are processors for them
+		Vector<LogicalJoinNode> nodes = new Vector<LogicalJoinNode>();
+		nodes.add(new LogicalJoinNode("t1", "t2", "c1", "c2", Predicate.Op.EQUALS));
+		JoinOptimizer jo = new JoinOptimizer(p.generateLogicalPlan(tid,
+				"SELECT * FROM " + tableName1 + " t1, " + tableName2 + " t2 WHERE t1.c1 = t2.c2;"), nodes);
+		Vector<LogicalJoinNode> result = jo.orderJoins(stats, filterSelectivities, false);
+		JoinAlgorithm hash = Runtime.getRuntime().availableProcessors() > 1
+				? JoinAlgorithm.PARALLEL_HASH : JoinAlgorithm.HASH;
+		Assert.assertEquals(hash, result.get(0).algorithm);
+		DbIterator join = JoinOptimizer.instantiateJoin(result.get(0),
+				new SeqScan(tid, tableId1, result.get(0).t1Alias), new SeqScan(tid, tableId2, result.get(0).t2Alias));
+		Assert.assertEquals(hash, JoinAlgorithm.of(join));
+
+		// a range join cannot be hashed, but beats tuple-at-a-time nested loops
+		nodes = new Vector<LogicalJoinNode>();
+		LogicalJoinNode lt = new LogicalJoinNode("t1", "t2", "c1", "c2", Predicate.Op.LESS_THAN);
+		nodes.add(lt);
+		jo = new JoinOptimizer(p.generateLogicalPlan(tid,
+				"SELECT * FROM " + tableName1 + " t1, " + tableName2 + " t2 WHERE t1.c1 < t2.c2;"), nodes);
+		result = jo.orderJoins(stats, filterSelectivities, false);
+		JoinAlgorithm algorithm = result.get(0).algorithm;
+		Assert.assertNotNull(algorithm);
+		Assert.assertFalse(algorithm.supports(Predicate.Op.EQUALS) && !algorithm.supports(Predicate.Op.LESS_THAN));
+		Assert.assertNotSame(JoinAlgorithm.NESTED_LOOP, algorithm);
+		int card1 = stats1.estimateTableCardinality(1.0), card2 = stats2.estimateTableCardinality(1.0);
+		double cost1 = stats1.estimateScanCost(), cost2 = stats2.estimateScanCost();
+		Assert.assertTrue(jo.estimateJoinCost(algorithm, lt, card1, card2, cost1, cost2)
+				< jo.estimateJoinCost(lt, card1, card2, cost1, cost2));
+		Assert.assertEquals(Double.POSITIVE_INFINITY,
+				jo.estimateJoinCost(JoinAlgorithm.HASH, lt, card1, card2, cost1, cost2), 0);
+	}
+
+	/**
+	 * Verify that the algorithm costs judge whether a joined input fits in memory by its
+	 * cardinality and tuple width, not by its cost, which includes the CPU cost of the join
+	 */
+	@Test public void joinedInputSizeTest() throws ParsingException {
+		TransactionId tid = new TransactionId();
+		Parser p = new Parser();
+		Vector<LogicalJoinNode> nodes = new Vector<LogicalJoinNode>();
+		LogicalJoinNode eq = new LogicalJoinNode("t1", "t2", "c1", "c2", Predicate.Op.EQUALS);
+		nodes.add(eq);
+		JoinOptimizer jo = new JoinOptimizer(p.generateLogicalPlan(tid,
+				"SELECT * FROM " + tableName1 + " t1, " + tableName2 + " t2 WHERE t1.c1 = t2.c2;"), nodes);
+
+		// the outer input is a join of two tables: few, wide tuples that cost a lot to produce
+		int card1 = 1000, card2 = stats2.estimateTableCardinality(1.0);
+		double cost1 = stats1.estimateScanCost() + 1000.0 * 10000, cost2 = stats2.estimateScanCost();
+		int width1 = 2 * f1.getTupleDesc().getSize(), width2 = f2.getTupleDesc().getSize();
+		Assert.assertTrue((double) card1 * width1 < HashEquiJoin.DEFAULT_MEMORY_BUDGET);
+		Assert.assertEquals(cost1 + cost2 + card1 + card2,
+				jo.estimateJoinCost(JoinAlgorithm.HASH, eq, card1, card2, cost1, cost2, width1, width2), 0);
+		Assert.assertEquals(cost1 + cost2 + (double) card1 * card2,
+				jo.estimateJoinCost(JoinAlgorithm.BLOCK_NESTED_LOOP, eq, card1, card2, cost1, cost2, width1, width2), 0);
+		Assert.assertTrue(jo.estimateJoinCost(JoinAlgorithm.BLOCK_NESTED_LOOP, eq, card1, card2, cost1, cost2, width1, width2)
+				< jo.estimateJoinCost(eq, card1, card2, cost1, cost2));
+	}
+
 	/**
 	 * Determine whether the orderJoins implementation is doing a reasonable job of ordering joins,
 	 * and not taking an unreasonable amount of time to do so 
@@ -465,4 +537,19 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
 		// Make sure that "a" is the outermost table in the join
 		Assert.assertTrue(result.get(result.size() - 1).t2Alias.equals("a") || result.get(result.size() - 1).t1Alias.equals("a"));
 	}
+
+	/**
+	 * Test that choosing an algorithm for a join with a subplan keeps the
+	 * subplan
+	 */
+	@Test public void subplanWithAlgorithmTest() {
+		DbIterator sub = TestUtil.createTupleList(1, new int[] { 1, 2 });
+		LogicalSubplanJoinNode node = new LogicalSubplanJoinNode("a", "a.c0", sub,
+				Predicate.Op.EQUALS);
+		LogicalJoinNode copy = node.withAlgorithm(JoinAlgorithm.HASH);
+		Assert.assertTrue(copy instanceof LogicalSubplanJoinNode);
+		Assert.assertSame(sub, ((LogicalSubplanJoinNode) copy).subPlan);
+		Assert.assertEquals(JoinAlgorithm.HASH, copy.algorithm);
+		Assert.assertEquals(node, copy);
+	}
 }
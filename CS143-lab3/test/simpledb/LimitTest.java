@@ -0,0 +1,76 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LimitTest extends SimpleDbTestBase {
+
+  int width = 2;
+  DbIterator scan;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleList() throws Exception {
+    this.scan = TestUtil.createTupleList(width,
+        new int[] { 5, 1,
+                    3, 1,
+                    9, 1,
+                    3, 2 });
+  }
+
+  /**
+   * Unit test for Limit.getNext() stopping before the end of its child, and
+   * for Limit.rewind()
+   */
+  @Test public void limit() throws Exception {
+    Limit op = new Limit(2, scan);
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(width, new int[] { 5, 1, 3, 1 });
+    TestUtil.compareDbIterators(expected, op);
+    assertTrue(scan.hasNext());
+    op.rewind();
+    expected.rewind();
+    TestUtil.compareDbIterators(expected, op);
+    op.close();
+  }
+
+  /**
+   * Unit test for a Limit of zero tuples and one larger than its child
+   */
+  @Test public void bounds() throws Exception {
+    Limit op = new Limit(0, scan);
+    op.open();
+    assertTrue(TestUtil.checkExhausted(op));
+    op.close();
+    op = new Limit(10, scan);
+    op.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(width,
+        new int[] { 5, 1, 3, 1, 9, 1, 3, 2 }), op);
+  }
+
+  /**
+   * Unit test for the parsing of a LIMIT clause, which ZQL does not know
+   */
+  @Test public void parseLimit() throws Exception {
+    String sql = "SELECT t.a FROM t ORDER BY t.a LIMIT 100;";
+    assertEquals(100, Parser.parseLimit(sql));
+    assertEquals("SELECT t.a FROM t ORDER BY t.a;", Parser.removeLimit(sql));
+    assertEquals(5, Parser.parseLimit("select * from t\nlimit 5 ;\n"));
+    assertEquals(-1, Parser.parseLimit("SELECT t.limit FROM t;"));
+    assertEquals("SELECT t.limit FROM t;", Parser.removeLimit("SELECT t.limit FROM t;"));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LimitTest.class);
+  }
+}
@@ -0,0 +1,219 @@
+package simpledb;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class LockingTest extends TestUtil.CreateHeapFile {
+    private PageId p0, p1;
+    private TransactionId tid1, tid2;
+
+    /** Time to wait before checking the state of a lock, in milliseconds. */
+    private static final int TIMEOUT = 100;
+
+    private BufferPool bp;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+
+        // populate the empty HeapFile with two pages and commit them
+        bp = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 505; ++i) {
+            bp.insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+        }
+        bp.transactionComplete(tid);
+        assertEquals(2, empty.numPages());
+
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        this.p0 = new HeapPageId(empty.getId(), 0);
+        this.p1 = new HeapPageId(empty.getId(), 1);
+        this.tid1 = new TransactionId();
+        this.tid2 = new TransactionId();
+    }
+
+    /**
+     * Start a thread that asks for the lock and return it once TIMEOUT has
+     * passed; the caller checks whether the lock was granted.
+     */
+    private TestUtil.LockGrabber grabLock(TransactionId tid, PageId pid,
+            Permissions perm) throws Exception {
+        TestUtil.LockGrabber t = new TestUtil.LockGrabber(tid, pid, perm);
+        t.start();
+        Thread.sleep(TIMEOUT);
+        return t;
+    }
+
+    /**
+     * Unit test for two shared locks on the same page.
+     */
+    @Test public void acquireReadLocksOnSamePage() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        assertTrue(grabLock(tid2, p0, Permissions.READ_ONLY).acquired());
+        assertTrue(bp.holdsLock(tid1, p0));
+        assertTrue(bp.holdsLock(tid2, p0));
+    }
+
+    /**
+     * Unit test for an exclusive lock request on a page another transaction
+     * reads; the request is granted once the reader commits.
+     */
+    @Test public void acquireReadWriteLocksOnSamePage() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        TestUtil.LockGrabber t = grabLock(tid2, p0, Permissions.READ_WRITE);
+        assertFalse(t.acquired());
+
+        bp.transactionComplete(tid1);
+        t.join(TIMEOUT * 10);
+        assertTrue(t.acquired());
+        assertNull(t.getError());
+    }
+
+    /**
+     * Unit test for a shared lock request on a page another transaction
+     * writes.
+     */
+    @Test public void acquireWriteReadLocksOnSamePage() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        TestUtil.LockGrabber t = grabLock(tid2, p0, Permissions.READ_ONLY);
+        assertFalse(t.acquired());
+
+        bp.transactionComplete(tid1);
+        t.join(TIMEOUT * 10);
+        assertTrue(t.acquired());
+    }
+
+    /**
+     * Unit test for exclusive locks on different pages.
+     */
+    @Test public void acquireWriteLocksOnTwoPages() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        assertTrue(grabLock(tid2, p1, Permissions.READ_WRITE).acquired());
+    }
+
+    /**
+     * Unit test for upgrading a shared lock to an exclusive one.
+     */
+    @Test public void lockUpgrade() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        assertTrue(bp.getLockManager().holdsExclusiveLock(tid1, p0));
+        assertFalse(grabLock(tid2, p0, Permissions.READ_ONLY).acquired());
+    }
+
+    /**
+     * Unit test for an upgrade while another transaction shares the page.
+     */
+    @Test public void lockUpgradeWaitsForReaders() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        bp.getPage(tid2, p0, Permissions.READ_ONLY);
+        TestUtil.LockGrabber t = grabLock(tid1, p0, Permissions.READ_WRITE);
+        assertFalse(t.acquired());
+
+        bp.transactionComplete(tid2);
+        t.join(TIMEOUT * 10);
+        assertTrue(t.acquired());
+    }
+
+    /**
+     * Unit test for BufferPool.releasePage().
+     */
+    @Test public void releasePage() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        bp.releasePage(tid1, p0);
+        assertFalse(bp.holdsLock(tid1, p0));
+        assertTrue(grabLock(tid2, p0, Permissions.READ_WRITE).acquired());
+    }
+
+    /**
+     * Unit test for BufferPool.transactionComplete() releasing every lock.
+     */
+    @Test public void transactionCompleteReleasesLocks() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        bp.getPage(tid1, p1, Permissions.READ_ONLY);
+        bp.transactionComplete(tid1, false);
+        assertFalse(bp.holdsLock(tid1, p0));
+        assertFalse(bp.holdsLock(tid1, p1));
+        assertTrue(grabLock(tid2, p0, Permissions.READ_WRITE).acquired());
+        assertTrue(grabLock(tid2, p1, Permissions.READ_WRITE).acquired());
+    }
+
+    /**
+     * Unit test for two transactions that each wait for a page the other
+     * reads: the younger one is aborted and the older one proceeds.
+     */
+    @Test public void readWriteDeadlock() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        bp.getPage(tid2, p1, Permissions.READ_ONLY);
+        TestUtil.LockGrabber t1 = grabLock(tid1, p1, Permissions.READ_WRITE);
+        assertFalse(t1.acquired());
+        TestUtil.LockGrabber t2 = grabLock(tid2, p0, Permissions.READ_WRITE);
+
+        t1.join(TIMEOUT * 10);
+        t2.join(TIMEOUT * 10);
+        assertTrue(t1.acquired());
+        assertNull(t1.getError());
+        assertFalse(t2.acquired());
+        assertTrue(t2.getError() instanceof TransactionAbortedException);
+        assertFalse(bp.holdsLock(tid2, p1));
+    }
+
+    /**
+     * Unit test for two readers of a page that both try to upgrade.
+     */
+    @Test public void upgradeDeadlock() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        bp.getPage(tid2, p0, Permissions.READ_ONLY);
+        TestUtil.LockGrabber t2 = grabLock(tid2, p0, Permissions.READ_WRITE);
+        assertFalse(t2.acquired());
+        TestUtil.LockGrabber t1 = grabLock(tid1, p0, Permissions.READ_WRITE);
+
+        t1.join(TIMEOUT * 10);
+        t2.join(TIMEOUT * 10);
+        assertTrue(t1.acquired());
+        assertTrue(t2.getError() instanceof TransactionAbortedException);
+        assertTrue(bp.getLockManager().holdsExclusiveLock(tid1, p0));
+    }
+
+    /**
+     * Unit test for a request that waits behind a long transaction without
+     * a deadlock: it is not aborted however long it waits.
+     */
+    @Test public void longWaitIsNotAborted() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        TestUtil.LockGrabber t = grabLock(tid2, p0, Permissions.READ_WRITE);
+        t.join(TIMEOUT * 5);
+        assertFalse(t.acquired());
+        assertNull(t.getError());
+
+        bp.transactionComplete(tid1);
+        t.join(TIMEOUT * 10);
+        assertTrue(t.acquired());
+    }
+
+    /**
+     * Unit test for aborting a transaction: its changes are not visible
+     * afterwards.
+     */
+    @Test public void abortDiscardsChanges() throws Exception {
+        HeapPage page = (HeapPage) bp.getPage(tid1, p1, Permissions.READ_WRITE);
+        int empty = page.getNumEmptySlots();
+        bp.insertTuple(tid1, p1.getTableId(), Utility.getHeapTuple(1, 2));
+        bp.transactionComplete(tid1, false);
+
+        page = (HeapPage) bp.getPage(tid2, p1, Permissions.READ_ONLY);
+        assertEquals(empty, page.getNumEmptySlots());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockingTest.class);
+    }
+}
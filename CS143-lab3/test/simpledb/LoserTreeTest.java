@@ -0,0 +1,60 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LoserTreeTest extends SimpleDbTestBase {
+
+  int width = 2;
+
+  /** @return an open tuple list of the values */
+  private DbIterator source(int... values) throws Exception {
+    DbIterator it = TestUtil.createTupleList(width, values);
+    it.open();
+    return it;
+  }
+
+  /**
+   * Unit test for LoserTree.next() over sources of different lengths, some
+   * empty; equal keys come out in the order of their sources
+   */
+  @Test public void merge() throws Exception {
+    DbIterator[] sources = new DbIterator[] {
+        source(1, 0, 4, 0, 9, 0),
+        source(),
+        source(2, 1, 4, 1),
+        source(0, 3, 4, 3, 5, 3, 6, 3, 7, 3),
+        source(3, 4) };
+    LoserTree tree = new LoserTree(new TupleComparator(0, true), sources);
+    DbIterator expected = source(0, 3, 1, 0, 2, 1, 3, 4, 4, 0, 4, 1, 4, 3,
+        5, 3, 6, 3, 7, 3, 9, 0);
+    while (expected.hasNext())
+      assertEquals(expected.next().toString(), tree.next().toString());
+    assertNull(tree.next());
+    assertNull(tree.next());
+  }
+
+  /**
+   * Unit test for a LoserTree over one source and over none
+   */
+  @Test public void fewSources() throws Exception {
+    LoserTree tree = new LoserTree(new TupleComparator(0, true),
+        new DbIterator[] { source(3, 1, 5, 2) });
+    assertEquals(new IntField(3), tree.next().getField(0));
+    assertEquals(new IntField(5), tree.next().getField(0));
+    assertNull(tree.next());
+    assertNull(new LoserTree(new TupleComparator(0, true), new DbIterator[0]).next());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LoserTreeTest.class);
+  }
+}
@@ -0,0 +1,119 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+
+    private MappedHeapFile openMapped(File f, int columns) {
+        MappedHeapFile mf = new MappedHeapFile(f, Utility.getTupleDesc(columns));
+        Database.getCatalog().addTable(mf, SystemTestUtil.getUUID());
+        return mf;
+    }
+
+    private static int countTuples(HeapPage page) {
+        int count = 0;
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); it.next())
+            count++;
+        return count;
+    }
+
+    /**
+     * A mapped file returns the same tuples as the heap file it maps.
+     */
+    @Test public void scan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 3000, 1 << 16, null, tuples);
+        MappedHeapFile mf = openMapped(f, 2);
+        assertEquals(6, mf.numPages());
+        SystemTestUtil.matchTuples(mf, tuples);
+        mf.close();
+    }
+
+    /**
+     * Pages written after the file was mapped, including pages that extend
+     * the file, are visible to later reads.
+     */
+    @Test public void readAfterWrite() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 10, 1 << 16, null, null);
+        MappedHeapFile mf = openMapped(f, 2);
+        HeapPageId pid0 = new HeapPageId(mf.getId(), 0);
+        HeapPageId pid1 = new HeapPageId(mf.getId(), 1);
+        HeapPage page = (HeapPage) mf.readPage(pid0);
+        assertEquals(10, countTuples(page));
+
+        page.insertTuple(Utility.getHeapTuple(new int[] { 7, 8 }));
+        mf.writePage(page);
+        HeapPage appended = new HeapPage(pid1, HeapPage.createEmptyPageData());
+        appended.insertTuple(Utility.getHeapTuple(new int[] { 9, 10 }));
+        mf.writePage(appended);
+
+        assertEquals(11, countTuples((HeapPage) mf.readPage(pid0)));
+        Tuple t = ((HeapPage) mf.readPage(pid1)).iterator().next();
+        assertEquals(new IntField(9), t.getField(0));
+        assertEquals(2, mf.numPages());
+    }
+
+    /**
+     * Tuples read from a mapped page keep their values when the page is
+     * written back with other tuples in their slots.
+     */
+    @Test public void tuplesSurviveWrite() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 10, 1 << 16, null, null);
+        MappedHeapFile mf = openMapped(f, 2);
+        HeapPageId pid = new HeapPageId(mf.getId(), 0);
+        // t is not decoded until after the write
+        Tuple t = ((HeapPage) mf.readPage(pid)).iterator().next();
+        HeapPage page = (HeapPage) mf.readPage(pid);
+        Tuple first = page.iterator().next();
+        Field a = first.getField(0);
+        Field b = first.getField(1);
+
+        page.deleteTuple(first);
+        page.insertTuple(Utility.getHeapTuple(new int[] { -1, -2 }));
+        mf.writePage(page);
+
+        assertEquals(a, t.getField(0));
+        assertEquals(b, t.getField(1));
+    }
+
+    /**
+     * Tables annotated with "mapped" in the catalog file are mapped.
+     */
+    @Test public void loadSchema() throws Exception {
+        File dir = File.createTempFile("catalog", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File catalog = new File(dir, "catalog.txt");
+        catalog.deleteOnExit();
+        FileWriter w = new FileWriter(catalog);
+        w.write("facts (a int, b int) mapped\n");
+        w.write("dims (c int pk, d string)\n");
+        w.close();
+
+        Database.getCatalog().loadSchema(catalog.getAbsolutePath());
+        Catalog c = Database.getCatalog();
+        assertTrue(c.getDatabaseFile(c.getTableId("facts")) instanceof MappedHeapFile);
+        assertFalse(c.getDatabaseFile(c.getTableId("dims")) instanceof MappedHeapFile);
+        assertEquals("c", c.getPrimaryKey(c.getTableId("dims")));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
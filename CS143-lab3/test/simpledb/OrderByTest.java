@@ -0,0 +1,65 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+  /**
+   * Unit test for an OrderBy whose child does not fit in its memory budget,
+   * before and after a rewind, and opened again
+   */
+  @Test public void spilledSort() throws Exception {
+    int[] values = new int[2000];
+    Random r = new Random(values.length);
+    for (int i = 0; i < values.length; i++)
+      values[i] = r.nextInt(10000);
+    int[] sorted = values.clone();
+    Arrays.sort(sorted);
+    OrderBy op = new OrderBy(0, true, TestUtil.createTupleList(1, values),
+        100 * Utility.getTupleDesc(1).getSize());
+    op.open();
+    assertTrue(op.getRunCount() > 1);
+    TestUtil.compareDbIterators(TestUtil.createTupleList(1, sorted), op);
+    op.rewind();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(1, sorted), op);
+    op.close();
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(1, sorted), op);
+    op.close();
+  }
+
+  /**
+   * Unit test for an OrderBy on two keys in opposite directions
+   */
+  @Test public void multipleKeys() throws Exception {
+    DbIterator scan = TestUtil.createTupleList(2,
+        new int[] { 2, 1,
+                    1, 1,
+                    2, 3,
+                    1, 2 });
+    OrderBy op = new OrderBy(new int[] { 0, 1 }, new boolean[] { true, false }, scan,
+        ExternalSort.DEFAULT_MEMORY_BUDGET);
+    assertEquals(0, op.getOrderByField());
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(2,
+        new int[] { 1, 2, 1, 1, 2, 3, 2, 1 }), op);
+    op.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(OrderByTest.class);
+  }
+}
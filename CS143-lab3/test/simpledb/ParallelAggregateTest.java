@@ -0,0 +1,96 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParallelAggregateTest extends SimpleDbTestBase {
+
+  HeapFile table;
+  TransactionId tid;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTable() throws Exception {
+    table = SystemTestUtil.createRandomHeapFile(3, 5000, 100, null,
+        new ArrayList<ArrayList<Integer>>());
+    assertTrue(table.numPages() > 4);
+    tid = new TransactionId();
+  }
+
+  /**
+   * Unit test comparing ParallelAggregate.getNext() with Aggregate for each
+   * aggregate op, grouped and not
+   */
+  @Test public void matchesAggregate() throws Exception {
+    for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.MIN,
+        Aggregator.Op.MAX, Aggregator.Op.SUM, Aggregator.Op.AVG,
+        Aggregator.Op.COUNT }) {
+      for (int gfield : new int[] { 0, Aggregator.NO_GROUPING }) {
+        Aggregate expected = new Aggregate(new SeqScan(tid, table.getId()), 1, gfield, op);
+        Aggregate actual = new ParallelAggregate(new SeqScan(tid, table.getId()), 1, gfield, op, 4);
+        assertEquals(TestUtil.contents(expected), TestUtil.contents(actual));
+      }
+    }
+  }
+
+  /**
+   * Unit test for ParallelAggregate.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    ParallelAggregate op = new ParallelAggregate(new SeqScan(tid, table.getId()),
+        2, 0, Aggregator.Op.SUM, 3);
+    op.open();
+    ArrayList<String> rows = TestUtil.drain(op);
+    assertEquals(100, rows.size());
+    op.rewind();
+    assertEquals(rows, TestUtil.drain(op));
+    op.close();
+  }
+
+  /**
+   * Unit test for a ParallelAggregate with more groups than its budget
+   * holds, which falls back to an Aggregate that spills
+   */
+  @Test public void tooManyGroups() throws Exception {
+    int budget = 10 * (Type.INT_TYPE.getLen() + Aggregate.GROUP_OVERHEAD);
+    Aggregate expected = new Aggregate(new SeqScan(tid, table.getId()), 1, 0,
+        Aggregator.Op.SUM);
+    ParallelAggregate actual = new ParallelAggregate(new SeqScan(tid, table.getId()), 1, 0,
+        Aggregator.Op.SUM, 4, budget);
+    actual.open();
+    assertTrue(actual.getSpilledPartitionCount() > 0);
+    actual.close();
+    assertEquals(TestUtil.contents(expected), TestUtil.contents(actual));
+  }
+
+  /**
+   * Unit test for a ParallelAggregate over a child that is not a table scan
+   */
+  @Test public void otherChild() throws Exception {
+    DbIterator scan = TestUtil.createTupleList(2,
+        new int[] { 1, 2,
+                    1, 4,
+                    3, 6 });
+    ParallelAggregate op = new ParallelAggregate(scan, 1, 0, Aggregator.Op.SUM, 4);
+    op.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(2, new int[] { 1, 6, 3, 6 }), op);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelAggregateTest.class);
+  }
+}
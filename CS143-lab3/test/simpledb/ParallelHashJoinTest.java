@@ -0,0 +1,158 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ParallelHashJoinTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int width2 = 3;
+  DbIterator scan1;
+  DbIterator scan2;
+  DbIterator eqJoin;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    3, 4,
+                    5, 6,
+                    7, 8 });
+    this.scan2 = TestUtil.createTupleList(width2,
+        new int[] { 1, 2, 3,
+                    2, 3, 4,
+                    3, 4, 5,
+                    4, 5, 6,
+                    5, 6, 7 });
+    this.eqJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 1, 2, 1, 2, 3,
+                    3, 4, 3, 4, 5,
+                    5, 6, 5, 6, 7 });
+  }
+
+  /**
+   * Unit test for ParallelHashJoin.getNext()
+   */
+  @Test public void eqJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    ParallelHashJoin op = new ParallelHashJoin(pred, scan1, scan2, 2);
+    op.open();
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+    op.close();
+  }
+
+  /**
+   * Unit test for the constructor with a predicate other than equality
+   */
+  @Test(expected=IllegalArgumentException.class)
+  public void unsupportedPredicate() {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.LESS_THAN, 0);
+    new ParallelHashJoin(pred, scan1, scan2, 2);
+  }
+
+  /**
+   * Unit test comparing ParallelHashJoin with HashEquiJoin on inputs spanning many
+   * chunks and result batches, including a rewind in the middle of the
+   * results
+   */
+  @Test public void matchesHashEquiJoin() throws Exception {
+    Random r = new Random(3);
+    int[] left = new int[2 * 40000];
+    int[] right = new int[3 * 5000];
+    for (int i = 0; i < left.length; i++)
+      left[i] = r.nextInt(1000);
+    for (int i = 0; i < right.length; i++)
+      right[i] = r.nextInt(1000);
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 1);
+    HashEquiJoin expected = new HashEquiJoin(pred, TestUtil.createTupleList(width1, left),
+        TestUtil.createTupleList(width2, right));
+    expected.open();
+    ArrayList<String> rows = TestUtil.drain(expected);
+    expected.close();
+    assertTrue(rows.size() > ParallelHashJoin.BATCH_SIZE * ParallelHashJoin.QUEUE_BATCHES);
+
+    ParallelHashJoin op = new ParallelHashJoin(pred, TestUtil.createTupleList(width1, left),
+        TestUtil.createTupleList(width2, right), 4);
+    op.open();
+    for (int i = 0; i < 10; i++)
+      op.next();
+    op.rewind();
+    assertEquals(rows, TestUtil.drain(op));
+    op.rewind();
+    assertEquals(rows, TestUtil.drain(op));
+    op.close();
+  }
+
+  /**
+   * Unit test for a ParallelHashJoin whose inputs exceed its memory budget,
+   * which hands them to a HashEquiJoin
+   */
+  @Test public void tooLarge() throws Exception {
+    Random r = new Random(5);
+    int[] left = new int[2 * 2000];
+    int[] right = new int[3 * 1000];
+    for (int i = 0; i < left.length; i++)
+      left[i] = r.nextInt(300);
+    for (int i = 0; i < right.length; i++)
+      right[i] = r.nextInt(300);
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 1);
+    HashEquiJoin expected = new HashEquiJoin(pred, TestUtil.createTupleList(width1, left),
+        TestUtil.createTupleList(width2, right));
+    expected.open();
+    ArrayList<String> rows = TestUtil.drain(expected);
+    expected.close();
+
+    int budget = 2500 * Utility.getTupleDesc(width1).getSize();
+    ParallelHashJoin op = new ParallelHashJoin(pred, TestUtil.createTupleList(width1, left),
+        TestUtil.createTupleList(width2, right), 2, budget);
+    op.open();
+    assertTrue(op.isFallback());
+    assertEquals(rows, TestUtil.drain(op));
+    op.rewind();
+    assertEquals(rows, TestUtil.drain(op));
+    op.close();
+  }
+
+  /**
+   * Unit test for a ParallelHashJoin on string join fields that is closed
+   * before all of its results are read
+   */
+  @Test public void stringJoinClosedEarly() throws Exception {
+    Object[] left = new Object[2 * 2000];
+    Object[] right = new Object[2 * 2000];
+    for (int i = 0; i < left.length; i += 2) {
+      left[i] = "k" + (i % 10);
+      left[i + 1] = "l" + i;
+      right[i] = "k" + (i % 10);
+      right[i + 1] = "r" + i;
+    }
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    ParallelHashJoin op = new ParallelHashJoin(pred, TestUtil.createTupleList(2, left),
+        TestUtil.createTupleList(2, right), 3);
+    op.open();
+    Tuple t = op.next();
+    assertEquals(t.getField(0), t.getField(2));
+    // the workers are far from done, and must not block the close
+    op.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelHashJoinTest.class);
+  }
+}
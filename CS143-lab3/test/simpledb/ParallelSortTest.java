@@ -0,0 +1,110 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParallelSortTest extends SimpleDbTestBase {
+
+  /**
+   * @return n tuples of a random key below keys and their position, so that
+   *   the order of equal keys shows whether a sort is stable
+   */
+  private Tuple[] tuples(int n, int keys) {
+    Random r = new Random(n);
+    Tuple[] tuples = new Tuple[n];
+    for (int i = 0; i < n; i++)
+      tuples[i] = Utility.getHeapTuple(new int[] { r.nextInt(keys) - keys / 2, i });
+    return tuples;
+  }
+
+  /**
+   * Sort tuples with ParallelSort and with Arrays.sort, which is stable, and
+   * check they agree tuple for tuple
+   */
+  private void checkSort(Tuple[] tuples, Comparator<Tuple> order, int parallelism) {
+    Tuple[] expected = tuples.clone();
+    Arrays.sort(expected, order);
+    ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    try {
+      ParallelSort.sort(tuples, order, pool);
+    } finally {
+      if (pool != null)
+        pool.shutdown();
+    }
+    for (int i = 0; i < tuples.length; i++)
+      assertSame(expected[i], tuples[i]);
+  }
+
+  /**
+   * Unit test for ParallelSort.sort() on an INT key, which sorts extracted
+   * keys, in both directions and over several chunks
+   */
+  @Test public void intKey() {
+    TupleDesc td = Utility.getTupleDesc(2);
+    int n = 5 * ParallelSort.CHUNK_SIZE + 17;
+    checkSort(tuples(n, 100), new TupleComparator(td, 0, true), 4);
+    checkSort(tuples(n, 100), new TupleComparator(td, 0, false), 3);
+    checkSort(tuples(n, Integer.MAX_VALUE), new TupleComparator(td, 0, true), 4);
+  }
+
+  /**
+   * Unit test for ParallelSort.sort() with any other comparator, which sorts
+   * the tuples themselves
+   */
+  @Test public void comparator() {
+    int n = 3 * ParallelSort.CHUNK_SIZE + 5;
+    checkSort(tuples(n, 50), new TupleComparator(0, true), 4);
+    checkSort(tuples(n, 50), new TupleComparator(null, new int[] { 0, 1 },
+        new boolean[] { false, false }), 2);
+  }
+
+  /**
+   * Unit test for ParallelSort.sort() on a single thread, and of inputs too
+   * small to be split
+   */
+  @Test public void sequential() {
+    TupleDesc td = Utility.getTupleDesc(2);
+    checkSort(tuples(3 * ParallelSort.CHUNK_SIZE, 10), new TupleComparator(td, 0, true), 1);
+    checkSort(tuples(100, 10), new TupleComparator(td, 0, false), 4);
+    checkSort(tuples(0, 10), new TupleComparator(td, 0, true), 4);
+  }
+
+  /**
+   * Unit test for ParallelSort.sort() of tuples read from a heap file, whose
+   * INT keys are read from the page without being decoded
+   */
+  @Test public void tuplesFromPages() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 3 * ParallelSort.CHUNK_SIZE,
+        new HashMap<Integer, Integer>(), null);
+    SeqScan scan = new SeqScan(new TransactionId(), f.getId(), "t");
+    ArrayList<Tuple> read = new ArrayList<Tuple>();
+    scan.open();
+    while (scan.hasNext())
+      read.add(scan.next());
+    scan.close();
+    Tuple[] tuples = read.toArray(new Tuple[read.size()]);
+    checkSort(tuples, new TupleComparator(scan.getTupleDesc(), 1, false), 4);
+    assertEquals(read.size(), tuples.length);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelSortTest.class);
+  }
+}
@@ -0,0 +1,107 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class StreamAggregateTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int[] values;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createValues() throws Exception {
+    values = new int[width1 * 1000];
+    Random r = new Random(values.length);
+    for (int i = 0; i < values.length; i++)
+      values[i] = r.nextInt(50) - 10;
+  }
+
+  /**
+   * Unit test comparing StreamAggregate.getNext() over sorted input with
+   * Aggregate for each aggregate op, grouped and not
+   */
+  @Test public void matchesAggregate() throws Exception {
+    for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.MIN,
+        Aggregator.Op.MAX, Aggregator.Op.SUM, Aggregator.Op.AVG,
+        Aggregator.Op.COUNT }) {
+      for (int gfield : new int[] { 0, Aggregator.NO_GROUPING }) {
+        Aggregate expected = new Aggregate(TestUtil.createTupleList(width1, values), 1, gfield, op);
+        Aggregate actual = new StreamAggregate(
+            new OrderBy(0, false, TestUtil.createTupleList(width1, values)), 1, gfield, op);
+        assertEquals(TestUtil.contents(expected), TestUtil.contents(actual));
+      }
+    }
+  }
+
+  /**
+   * Unit test for StreamAggregate returning a group before reading the
+   * whole child, and for StreamAggregate.rewind()
+   */
+  @Test public void streams() throws Exception {
+    DbIterator child = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    1, 4,
+                    3, 6,
+                    5, 7 });
+    StreamAggregate op = new StreamAggregate(child, 1, 0, Aggregator.Op.SUM);
+    op.open();
+    assertEquals(new IntField(6), op.next().getField(1));
+    assertTrue(child.hasNext());
+    op.rewind();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(width1,
+        new int[] { 1, 6, 3, 6, 5, 7 }), op);
+    op.close();
+  }
+
+  /**
+   * Unit test for StreamAggregate over a child with no tuples
+   */
+  @Test public void emptyChild() throws Exception {
+    for (int gfield : new int[] { 0, Aggregator.NO_GROUPING }) {
+      Aggregate expected = new Aggregate(TestUtil.createTupleList(width1, new int[0]), 1,
+          gfield, Aggregator.Op.COUNT);
+      Aggregate actual = new StreamAggregate(TestUtil.createTupleList(width1, new int[0]), 1,
+          gfield, Aggregator.Op.COUNT);
+      assertEquals(TestUtil.contents(expected), TestUtil.contents(actual));
+    }
+  }
+
+  /**
+   * Unit test for StreamAggregate.isGroupedOn()
+   */
+  @Test public void isGroupedOn() throws Exception {
+    DbIterator scan = TestUtil.createTupleList(width1, values);
+    assertFalse(StreamAggregate.isGroupedOn(scan, 0));
+    assertTrue(StreamAggregate.isGroupedOn(new OrderBy(1, true, scan), 1));
+    assertFalse(StreamAggregate.isGroupedOn(new OrderBy(1, true, scan), 0));
+    assertTrue(StreamAggregate.isGroupedOn(
+        new ExternalSort(new TupleComparator(0, false), scan), 0));
+    assertTrue(StreamAggregate.isGroupedOn(new Filter(
+        new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(3)),
+        new OrderBy(0, true, scan)), 0));
+    SortMergeJoin join = new SortMergeJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 0),
+        scan, TestUtil.createTupleList(width1, values));
+    assertTrue(StreamAggregate.isGroupedOn(join, 1));
+    assertTrue(StreamAggregate.isGroupedOn(join, width1));
+    assertFalse(StreamAggregate.isGroupedOn(join, 0));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(StreamAggregateTest.class);
+  }
+}
@@ -149,6 +149,31 @@ public class TestUtil {
         }
     }
 
+    /**
+     * @return the tuples left in it, as strings in sorted order, for
+     *   comparing the results of operators that return tuples in no
+     *   particular order
+     */
+    public static ArrayList<String> drain(DbIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<String> rows = new ArrayList<String>();
+        while (it.hasNext())
+            rows.add(it.next().toString());
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Open it, {@link #drain} it, and close it.
+     */
+    public static ArrayList<String> contents(DbIterator it)
+            throws DbException, TransactionAbortedException {
+        it.open();
+        ArrayList<String> rows = drain(it);
+        it.close();
+        return rows;
+    }
+
     /**
      * Verifies that the DbIterator has been exhausted of all elements.
      */
@@ -232,6 +257,9 @@ public class TestUtil {
             return tableid;
         }
 
+        public void close() {
+        }
+
         public DbFileIterator iterator(TransactionId tid) {
             throw new RuntimeException("not implemented");
         }
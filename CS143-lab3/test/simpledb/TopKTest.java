@@ -0,0 +1,66 @@
+package simpledb;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class TopKTest extends SimpleDbTestBase {
+
+  int width = 2;
+
+  /**
+   * Unit test comparing TopK with OrderBy followed by Limit, in both
+   * directions and for several k; equal keys keep the order of the child
+   */
+  @Test public void matchesOrderByLimit() throws Exception {
+    int[] values = new int[width * 500];
+    Random r = new Random(values.length);
+    for (int i = 0; i < values.length; i += width) {
+      values[i] = r.nextInt(50);
+      values[i + 1] = i;
+    }
+    for (boolean asc : new boolean[] { true, false }) {
+      for (int k : new int[] { 0, 1, 7, 100, 500, 1000 }) {
+        DbIterator expected = new Limit(k, new OrderBy(0, asc,
+            TestUtil.createTupleList(width, values)));
+        TopK actual = new TopK(0, asc, k, TestUtil.createTupleList(width, values));
+        expected.open();
+        actual.open();
+        TestUtil.compareDbIterators(expected, actual);
+        assertTrue(TestUtil.checkExhausted(actual));
+        actual.rewind();
+        expected.rewind();
+        TestUtil.compareDbIterators(expected, actual);
+        actual.close();
+      }
+    }
+  }
+
+  /**
+   * Unit test for a TopK whose limit is far larger than its child, which
+   * returns the whole child without allocating room for k tuples
+   */
+  @Test public void hugeLimit() throws Exception {
+    int[] values = new int[] { 3, 0, 1, 1, 2, 2 };
+    DbIterator expected = TestUtil.createTupleList(width, new int[] { 1, 1, 2, 2, 3, 0 });
+    TopK actual = new TopK(0, true, 100000000, TestUtil.createTupleList(width, values));
+    expected.open();
+    actual.open();
+    TestUtil.compareDbIterators(expected, actual);
+    assertTrue(TestUtil.checkExhausted(actual));
+    actual.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TopKTest.class);
+  }
+}
@@ -0,0 +1,100 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class TupleBatchTest extends SimpleDbTestBase {
+
+  /**
+   * Unit test for TupleBatch.addTuple() and getTuple() over INT and STRING
+   * columns, until the batch is full
+   */
+  @Test public void addAndGet() {
+    TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+    TupleBatch batch = new TupleBatch(td, 3);
+    for (int i = 0; i < 3; i++) {
+      assertFalse(batch.isFull());
+      Tuple t = new Tuple(td);
+      t.setField(0, new IntField(i));
+      t.setField(1, new StringField("s" + i, Type.STRING_LEN));
+      batch.addTuple(t);
+    }
+    assertTrue(batch.isFull());
+    assertEquals(3, batch.size());
+    assertEquals(1, batch.getInts(0)[1]);
+    assertEquals(new StringField("s2", Type.STRING_LEN), batch.getField(1, 2));
+    Tuple t = batch.getTuple(2);
+    assertEquals(new IntField(2), t.getField(0));
+    assertEquals(new StringField("s2", Type.STRING_LEN), t.getField(1));
+
+    batch.clear();
+    assertEquals(0, batch.size());
+    assertFalse(batch.isFull());
+  }
+
+  /**
+   * Unit test for Predicate.filter() on a batch, which narrows its selection,
+   * and for a projection of the filtered batch
+   */
+  @Test public void selection() {
+    TupleBatch batch = new TupleBatch(Utility.getTupleDesc(2));
+    for (int i = 0; i < 10; i++)
+      batch.addTuple(Utility.getHeapTuple(new int[] { i, 10 * i }));
+    assertEquals(5, new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(5))
+        .filter(batch));
+    assertEquals(4, new Predicate(1, Predicate.Op.LESS_THAN, new IntField(90))
+        .filter(batch));
+    assertEquals(3, new Predicate(0, Predicate.Op.NOT_EQUALS, new IntField(7))
+        .filter(batch));
+    assertEquals(3, batch.size());
+    assertEquals(10, batch.getRowCount());
+    assertEquals(5, batch.getSelection()[0]);
+    assertEquals(6, batch.getSelection()[1]);
+    assertEquals(8, batch.getSelection()[2]);
+
+    TupleBatch view = batch.project(new TupleDesc(new Type[] { Type.INT_TYPE }), new int[] { 1 });
+    assertEquals(3, view.size());
+    assertSame(batch.getInts(1), view.getInts(0));
+    assertEquals(new IntField(80), view.getTuple(2).getField(0));
+  }
+
+  /**
+   * Unit test for BatchAdapter and TupleAdapter: tuples returned in batches
+   * and back one at a time are the same tuples
+   */
+  @Test public void adapters() throws Exception {
+    int[] values = new int[2 * (2 * TupleBatch.DEFAULT_CAPACITY + 100)];
+    for (int i = 0; i < values.length; i++)
+      values[i] = i;
+    BatchIterator batches = BatchAdapter.of(TestUtil.createTupleList(2, values));
+    batches.open();
+    assertEquals(TupleBatch.DEFAULT_CAPACITY, batches.nextBatch().size());
+    assertEquals(TupleBatch.DEFAULT_CAPACITY, batches.nextBatch().size());
+    assertEquals(100, batches.nextBatch().size());
+    assertNull(batches.nextBatch());
+
+    TupleAdapter tuples = new TupleAdapter(batches);
+    tuples.open();
+    DbIterator expected = TestUtil.createTupleList(2, values);
+    expected.open();
+    TestUtil.compareDbIterators(expected, tuples);
+    tuples.rewind();
+    expected.rewind();
+    TestUtil.compareDbIterators(expected, tuples);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TupleBatchTest.class);
+  }
+}
@@ -0,0 +1,67 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class TupleComparatorTest extends SimpleDbTestBase {
+
+  /**
+   * Unit test for TupleComparator.compare() on one int key, with and
+   * without a TupleDesc
+   */
+  @Test public void singleKey() {
+    Tuple a = Utility.getHeapTuple(new int[] { Integer.MIN_VALUE, 1 });
+    Tuple b = Utility.getHeapTuple(new int[] { Integer.MAX_VALUE, 1 });
+    TupleDesc td = Utility.getTupleDesc(2);
+    for (TupleComparator c : new TupleComparator[] { new TupleComparator(0, true),
+        new TupleComparator(td, 0, true) }) {
+      assertTrue(c.compare(a, b) < 0);
+      assertTrue(c.compare(b, a) > 0);
+      assertEquals(0, c.compare(a, a));
+    }
+    assertTrue(new TupleComparator(td, 0, false).compare(a, b) > 0);
+    assertEquals(0, new TupleComparator(td, 1, false).compare(a, b));
+  }
+
+  /**
+   * Unit test for TupleComparator.compare() on several keys of mixed types
+   * and directions
+   */
+  @Test public void multipleKeys() throws Exception {
+    DbIterator it = TestUtil.createTupleList(2,
+        new Object[] { "b", 1,
+                       "b", 2,
+                       "a", 5 });
+    it.open();
+    Tuple b1 = it.next(), b2 = it.next(), a5 = it.next();
+    TupleComparator c = new TupleComparator(b1.getTupleDesc(), new int[] { 0, 1 },
+        new boolean[] { true, false });
+    assertEquals(2, c.getKeyCount());
+    assertEquals(1, c.getField(1));
+    assertTrue(!c.isAscending(1));
+    assertTrue(c.compare(a5, b1) < 0);
+    assertTrue(c.compare(b2, b1) < 0);
+    assertTrue(c.compare(b1, b2) > 0);
+    assertEquals(0, c.compare(b1, b1));
+  }
+
+  /**
+   * Unit test for the constructor with a direction missing
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void missingDirection() {
+    new TupleComparator(null, new int[] { 0, 1 }, new boolean[] { true });
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TupleComparatorTest.class);
+  }
+}
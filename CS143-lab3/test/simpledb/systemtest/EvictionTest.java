@@ -40,6 +40,34 @@ public class EvictionTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * A scan over a table larger than the buffer pool reads through a
+     * private ring, so a small table cached before the scan stays resident.
+     */
+    @Test public void testLargeScanKeepsHotPages() throws IOException, DbException, TransactionAbortedException {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 4 * 504, null, null);
+        HeapFile large = SystemTestUtil.createRandomHeapFile(2, 64 * 504, null, null);
+        BufferPool bp = Database.resetBufferPool(BUFFER_PAGES);
+        TransactionId tid = new TransactionId();
+
+        scanAll(tid, hot);
+        scanAll(tid, large);
+        bp.resetStatistics();
+        scanAll(tid, hot);
+        assertEquals(0, bp.getMissCount());
+        assertEquals(hot.numPages(), bp.getHitCount());
+    }
+
+    private static void scanAll(TransactionId tid, HeapFile f)
+            throws DbException, TransactionAbortedException {
+        SeqScan scan = new SeqScan(tid, f.getId(), "");
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next();
+        }
+        scan.close();
+    }
+
     public static void insertRow(HeapFile f, Transaction t) throws DbException,
             TransactionAbortedException {
         // Create a row to insert
@@ -104,6 +104,62 @@ public class ScanTest extends SimpleDbTestBase {
         assertEquals(0, table.readCount);
     }
 
+    /** Verifies that read-ahead prefetches pages once access is sequential. */
+    @Test public void testReadAhead() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(1, 992*20, null, null);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        ReadAhead readAhead = new ReadAhead(bp, f, null);
+
+        // a single access is not enough to call the scan sequential
+        readAhead.accessed(0);
+        Thread.sleep(50);
+        assertEquals(0, bp.getPrefetchCount());
+
+        readAhead.accessed(1);
+        // pages 2-5
+        waitForPrefetches(bp, ReadAhead.INITIAL_WINDOW);
+        bp.getPage(tid, new HeapPageId(f.getId(), 2), Permissions.READ_ONLY);
+        assertEquals(1, bp.getPrefetchUsedCount());
+        assertEquals(0, bp.getMissCount());
+
+        // reaching the middle of the batch requests a larger one
+        readAhead.accessed(2);
+        readAhead.accessed(3);
+        assertEquals(2 * ReadAhead.INITIAL_WINDOW, readAhead.getWindow());
+        // pages 2-5 from the first batch, 6-11 from the second
+        waitForPrefetches(bp, 10);
+
+        // a jump shrinks the window again
+        readAhead.accessed(15);
+        assertEquals(ReadAhead.INITIAL_WINDOW, readAhead.getWindow());
+        readAhead.cancel();
+        bp.transactionComplete(tid);
+    }
+
+    /** Verifies that read-ahead stops at the end of a partial scan. */
+    @Test public void testReadAheadEndPage() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(1, 992*20, null, null);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        ReadAhead readAhead = new ReadAhead(bp, f, null, 4);
+
+        readAhead.accessed(0);
+        readAhead.accessed(1);
+        // pages 2-3 only, although the window is larger
+        waitForPrefetches(bp, 2);
+        readAhead.accessed(2);
+        readAhead.accessed(3);
+        Thread.sleep(50);
+        assertEquals(2, bp.getPrefetchCount());
+        readAhead.cancel();
+    }
+
+    private static void waitForPrefetches(BufferPool bp, int count) throws InterruptedException {
+        for (int i = 0; i < 500 && bp.getPrefetchCount() < count; i++)
+            Thread.sleep(10);
+        assertEquals(count, bp.getPrefetchCount());
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(ScanTest.class);